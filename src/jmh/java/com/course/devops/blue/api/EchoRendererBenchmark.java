@@ -0,0 +1,151 @@
+package com.course.devops.blue.api;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * {@link EchoRenderer} against the original <code>StringBuilder</code> /
+ * <code>String.format</code> echo, on a request shaped like the proxy-path
+ * smoke test (ingress / tracing headers, a few parameters, small body). Both
+ * write into the same reusable writer, as the endpoint writes to the response
+ * writer. Run with <code>-prof gc</code> to compare allocation per operation.
+ * <p>
+ * Setup fails if the response bytes of the renderer (written as
+ * <code>DevopsBlueApi.echo</code> does) differ from the UTF-8 bytes the
+ * original <code>String</code> response was sent as. The request carries non
+ * Latin-1 text, so a charset change is caught too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EchoRendererBenchmark {
+
+  private HttpServletRequest request;
+
+  private byte[] rawBody;
+
+  private CharArrayWriter out;
+
+  @Setup
+  public void setup() throws IOException {
+    var mock = new MockHttpServletRequest("POST", "/devops/blue/api/echo");
+
+    mock.setServletPath("/api/echo");
+    mock.setProtocol("HTTP/1.1");
+    mock.addHeader("host", "devops-blue.example.com");
+    mock.addHeader("user-agent", "curl/7.68.0");
+    mock.addHeader("accept", "*/*");
+    mock.addHeader("content-type", "application/json");
+    mock.addHeader("x-forwarded-for", "10.0.0.1");
+    mock.addHeader("x-forwarded-for", "10.0.0.2");
+    mock.addHeader("x-forwarded-proto", "https");
+    mock.addHeader("x-request-id", "4b1c5f2e-0a7d-4c7b-9d62-2f3e8a1b6c90");
+    mock.addHeader("x-b3-traceid", "80f198ee56343ba864fe8b2a57d3eff7");
+    mock.addHeader("x-b3-spanid", "e457b5a2e4d86bd1");
+    mock.addHeader("x-b3-parentspanid", "05e3ac9a4f6e3b90");
+    mock.addHeader("x-b3-sampled", "1");
+    mock.addHeader("x-envoy-attempt-count", "1");
+    mock.addHeader("accept-encoding", "gzip, deflate, br");
+    mock.addHeader("x-user-name", "Zoë Łukasz 山田");
+    mock.addParameter("id", "42");
+    mock.addParameter("tag", "a", "b", "c");
+    this.request = mock;
+    this.rawBody = "{\"message\":\"héllo from the smoke test ✓\",\"count\":3}".getBytes();
+    this.out = new CharArrayWriter(4096);
+
+    // legacy String response, written by the message converter in UTF-8
+    var expected = legacyEcho(request, rawBody).getBytes(StandardCharsets.UTF_8);
+    var actual = rendererResponse();
+
+    if (!Arrays.equals(expected, actual)) {
+      throw new IllegalStateException("EchoRenderer response bytes differ from legacy echo response bytes");
+    }
+  }
+
+  /**
+   * Response body as written by <code>DevopsBlueApi.echo</code>.
+   */
+  private byte[] rendererResponse() throws IOException {
+    var response = new MockHttpServletResponse();
+
+    response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+    response.setCharacterEncoding(EchoRenderer.CHARSET.name());
+    EchoRenderer.render(request, rawBody, response.getWriter());
+    response.getWriter().flush();
+
+    return response.getContentAsByteArray();
+  }
+
+  @Benchmark
+  public int legacy() {
+    out.reset();
+    out.append(legacyEcho(request, rawBody));
+
+    return out.size();
+  }
+
+  @Benchmark
+  public int renderer() throws IOException {
+    out.reset();
+    EchoRenderer.render(request, rawBody, out);
+
+    return out.size();
+  }
+
+  /**
+   * Echo rendering as it was in <code>DevopsBlueApi.echo</code> and
+   * <code>DevopsBlueChainApi.echo</code>.
+   */
+  private static String legacyEcho(HttpServletRequest request, byte[] rawBody) {
+    final var sb = new StringBuilder();
+
+    if (request.isSecure()) {
+      sb.append("Protocol : " + request.getProtocol() + " (via secure TLS / HTTPS)\n\n");
+    } else {
+      sb.append("Protocol : " + request.getProtocol() + " (via plain HTTP)\n\n");
+    }
+    sb.append("Path : " + request.getServletPath() + "\n\n");
+    sb.append("Method : " + request.getMethod() + "\n\n");
+    sb.append("Headers :\n\n");
+    request.getHeaderNames().asIterator().forEachRemaining(hn -> {
+      request.getHeaders(hn).asIterator().forEachRemaining(hv -> {
+        sb.append(String.format("  %s : %s", hn, hv));
+        sb.append("\n");
+      });
+    });
+    sb.append("\n");
+    sb.append("Cookies : " + request.getCookies() + "\n\n");
+    sb.append("Parameters :\n");
+    request.getParameterMap().forEach((k, v) -> {
+      sb.append(String.format("  %s : %s", k, Arrays.asList(v)));
+      sb.append("\n");
+    });
+    sb.append("\n");
+    sb.append("Body : " + (rawBody != null ? new String(rawBody) : null));
+
+    return sb.toString();
+  }
+
+}
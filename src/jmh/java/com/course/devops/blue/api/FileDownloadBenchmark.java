@@ -0,0 +1,124 @@
+package com.course.devops.blue.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.UrlResource;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Download throughput of a stored file to a loopback socket, drained by
+ * another thread: the previous path (<code>UrlResource</code> stream copied
+ * through a heap buffer, as <code>ResourceHttpMessageConverter</code> does)
+ * against {@link FileChannel#transferTo} to the socket, which is what Tomcat
+ * sendfile does for {@link FileDownloadWriter}.
+ * <p>
+ * Score is files per second, multiply by <code>size</code> for bytes per
+ * second. Run with <code>-prof gc</code> to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileDownloadBenchmark {
+
+  @Param({ "1048576", "67108864" })
+  private int size;
+
+  private Path file;
+
+  private UrlResource resource;
+
+  private ServerSocketChannel server;
+
+  private SocketChannel client;
+
+  private OutputStream clientOut;
+
+  private Thread drain;
+
+  @Setup
+  public void setup() throws IOException {
+    file = Files.createTempFile("devops-blue-download-", ".bin");
+
+    var content = new byte[size];
+    new Random(42).nextBytes(content);
+    Files.write(file, content);
+    resource = new UrlResource(file.toUri());
+
+    server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    client = SocketChannel.open(server.getLocalAddress());
+    clientOut = Channels.newOutputStream(client);
+
+    var accepted = server.accept();
+
+    drain = new Thread(() -> {
+      var buffer = ByteBuffer.allocateDirect(1024 * 1024);
+
+      try (accepted) {
+        while (accepted.read(buffer) >= 0) {
+          buffer.clear();
+        }
+      } catch (IOException e) {
+        // closed on tear down
+      }
+    }, "download-drain");
+    drain.setDaemon(true);
+    drain.start();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException, InterruptedException {
+    client.close();
+    server.close();
+    drain.join(TimeUnit.SECONDS.toMillis(5));
+    Files.deleteIfExists(file);
+  }
+
+  @Benchmark
+  public long resourceCopy() throws IOException {
+    try (var in = resource.getInputStream()) {
+      return StreamUtils.copy(in, clientOut);
+    }
+  }
+
+  @Benchmark
+  public long transferTo() throws IOException {
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      var position = 0L;
+
+      while (position < size) {
+        position += channel.transferTo(position, size - position, client);
+      }
+
+      return position;
+    }
+  }
+
+}
@@ -0,0 +1,65 @@
+package com.course.devops.blue.api;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.RandomUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.course.devops.blue.constant.DevopsApiConstants;
+
+/**
+ * Status code selection of the status / chain endpoints: {@link ResponseStatusCodes}
+ * against the original per-controller <code>HashMap</code> with
+ * <code>RandomUtils</code> (one <code>Random</code> shared by all threads).
+ * Runs with several threads, as concurrent requests do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ResponseStatusCodesBenchmark {
+
+  private static final Map<String, List<Integer>> MAP_RESPONSE_STATUS_CODE = new HashMap<>();
+
+  static {
+    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_2XX, List.of(200, 201, 202));
+    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_3XX, List.of(301, 302, 304, 307, 308));
+    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_4XX,
+        List.of(400, 401, 403, 404, 405, 406, 408, 413, 415, 429, 431));
+    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_5XX, List.of(500, 501, 502, 503, 504));
+    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_RANDOM, List.of(200, 201, 202, 301, 302, 304, 307, 308, 400,
+        401, 403, 404, 405, 406, 408, 413, 415, 429, 431, 500, 501, 502, 503, 504));
+  }
+
+  @Param({ DevopsApiConstants.STATUS_2XX, DevopsApiConstants.STATUS_RANDOM })
+  private String group;
+
+  @Benchmark
+  public int legacy() {
+    var listStatus = MAP_RESPONSE_STATUS_CODE.get(group);
+
+    return listStatus.get(RandomUtils.nextInt(0, listStatus.size()));
+  }
+
+  @Benchmark
+  public int responseStatusCodes() {
+    return ResponseStatusCodes.random(group);
+  }
+
+}
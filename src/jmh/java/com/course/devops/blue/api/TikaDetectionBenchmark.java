@@ -0,0 +1,88 @@
+package com.course.devops.blue.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tika.Tika;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tika content type detection as done by upload (whole file as
+ * <code>byte[]</code>) and download (stream, Tika reads only the prefix it
+ * needs), on typical upload sizes and types.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TikaDetectionBenchmark {
+
+  private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+  private static final byte[] PDF_SIGNATURE = "%PDF-1.7\n".getBytes(StandardCharsets.US_ASCII);
+
+  @Param({ "png", "pdf", "text" })
+  private String type;
+
+  @Param({ "16384", "1048576", "8388608" })
+  private int size;
+
+  private final Tika tika = new Tika();
+
+  private byte[] content;
+
+  @Setup
+  public void setup() {
+    var random = new Random(42);
+
+    content = new byte[size];
+
+    switch (type) {
+    case "png":
+      random.nextBytes(content);
+      System.arraycopy(PNG_SIGNATURE, 0, content, 0, PNG_SIGNATURE.length);
+      break;
+    case "pdf":
+      random.nextBytes(content);
+      System.arraycopy(PDF_SIGNATURE, 0, content, 0, PDF_SIGNATURE.length);
+      break;
+    default:
+      var line = "The quick brown fox jumps over the lazy dog 0123456789\n".getBytes(StandardCharsets.US_ASCII);
+
+      for (int i = 0; i < size; i += line.length) {
+        System.arraycopy(line, 0, content, i, Math.min(line.length, size - i));
+      }
+      break;
+    }
+  }
+
+  /**
+   * As upload does, <code>MultipartFile.getBytes()</code> copies the whole
+   * content before detection.
+   */
+  @Benchmark
+  public String detectBytes() {
+    return tika.detect(content.clone());
+  }
+
+  @Benchmark
+  public String detectStream() throws IOException {
+    return tika.detect(new ByteArrayInputStream(content));
+  }
+
+}
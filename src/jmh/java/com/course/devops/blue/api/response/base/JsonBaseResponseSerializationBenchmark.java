@@ -0,0 +1,79 @@
+package com.course.devops.blue.api.response.base;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.course.devops.blue.api.response.HelloTimeResponse;
+import com.course.devops.blue.constant.ApiGenericExceptionHandlerConstants;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Jackson serialization of the {@link JsonBaseResponse} envelope, as written
+ * by the message converter: success with data, error with one
+ * {@link JsonBaseError} (exception handler) and a page of records.
+ * <p>
+ * Object mapper is built the same way as Spring Boot does it
+ * ({@link Jackson2ObjectMapperBuilder}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBaseResponseSerializationBenchmark {
+
+  private ObjectMapper objectMapper;
+
+  private JsonBaseResponse<HelloTimeResponse> success;
+
+  private JsonBaseResponse<Object> error;
+
+  private JsonBaseResponse<JsonBasePage<String>> page;
+
+  @Setup
+  public void setup() {
+    var startTime = System.currentTimeMillis();
+
+    objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    success = new JsonBaseResponse<>(startTime,
+        HelloTimeResponse.builder().randomNumber(4242424242L).currentTime("2022-09-01T10:15:30.123").build());
+    error = new JsonBaseResponse<>(startTime,
+        JsonBaseError.builder().code(ApiGenericExceptionHandlerConstants.CODE_API_CHAIN_CALL_ERROR)
+            .message(ApiGenericExceptionHandlerConstants.MESSAGE_API_CHAIN_CALL_ERROR)
+            .reason("Downstream yellow unavailable : circuit breaker is OPEN").build());
+    page = new JsonBaseResponse<>(startTime, JsonBasePage.<String>builder().size(20).page(1).totalPage(50)
+        .totalRecords(1000).records(List.of("b3c1f0a2-5f6e-4c1d-9a7b-0e8d2c4f6a10", "0f6a6e3c-2d14-4b6f-8a0e-5c9d7b1e3f42",
+            "9d2e7a41-6c3b-4f58-b0d1-7e2a5c8f1b36", "4a8c1e5f-3b7d-4e29-9c06-1f5b8d2a7e90"))
+        .build());
+  }
+
+  @Benchmark
+  public byte[] success() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(success);
+  }
+
+  @Benchmark
+  public byte[] error() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(error);
+  }
+
+  @Benchmark
+  public byte[] page() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(page);
+  }
+
+}
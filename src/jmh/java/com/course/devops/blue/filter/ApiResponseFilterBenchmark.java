@@ -0,0 +1,60 @@
+package com.course.devops.blue.filter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * {@link ApiResponseFilter#doFilterInternal} on every response: the three
+ * <code>K8s-*</code> headers and the pass to the (empty) chain. The response
+ * is reset on each call, as each request gets a fresh one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApiResponseFilterBenchmark {
+
+  private ApiResponseFilter filter;
+
+  private MockHttpServletRequest request;
+
+  private MockHttpServletResponse response;
+
+  @Setup
+  public void setup() {
+    filter = new ApiResponseFilter();
+    ReflectionTestUtils.setField(filter, "springApplicationName", "devops-blue");
+    ReflectionTestUtils.invokeMethod(filter, "postConstruct");
+
+    request = new MockHttpServletRequest("GET", "/devops/blue/api/time");
+    response = new MockHttpServletResponse();
+  }
+
+  @Benchmark
+  public MockHttpServletResponse doFilterInternal() throws ServletException, IOException {
+    response.reset();
+    filter.doFilterInternal(request, response, new MockFilterChain());
+
+    return response;
+  }
+
+}
@@ -0,0 +1,109 @@
+package com.course.devops.blue.service.command;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CPU cost of document compression: compressing a 4 MB document at save time
+ * ({@link GzipCompressingInputStream}), and decompressing it for a client not
+ * accepting gzip. <code>text</code> is log-like text, <code>random</code> is
+ * incompressible (like already compressed PDF streams).
+ * <p>
+ * <code>compress</code> also reports bytes in and out, for the on-disk saving,
+ * as secondary results (<code>originalBytes</code>,
+ * <code>compressedBytes</code>). They are totals over all measured
+ * compressions, not the size of one document: their ratio is the stored size
+ * ratio.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GzipCompressingInputStreamBenchmark {
+
+  private static final int SIZE = 4 * 1024 * 1024;
+
+  @Param({ "text", "random" })
+  private String content;
+
+  @Param({ "1", "6" })
+  private int level;
+
+  private byte[] original;
+
+  private byte[] compressed;
+
+  /**
+   * Bytes in / out of each compression, added up: JMH sums event counters over
+   * iterations and threads anyway
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class StoredSize {
+
+    public long originalBytes;
+
+    public long compressedBytes;
+
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    if ("text".equals(content)) {
+      var text = new StringBuilder(SIZE + 128);
+
+      for (int i = 0; text.length() < SIZE; i++) {
+        text.append(i).append(" INFO request handled path=/api/doc/").append(i * 7919 % 10007)
+            .append(" status=200 took=").append(i % 97).append("ms\n");
+      }
+      original = text.substring(0, SIZE).getBytes(StandardCharsets.US_ASCII);
+    } else {
+      original = new byte[SIZE];
+      new Random(42).nextBytes(original);
+    }
+
+    try (var in = new GzipCompressingInputStream(new ByteArrayInputStream(original), level)) {
+      compressed = in.readAllBytes();
+    }
+  }
+
+  @Benchmark
+  public long compress(StoredSize size) throws IOException {
+    try (var in = new GzipCompressingInputStream(new ByteArrayInputStream(original), level)) {
+      var compressedBytes = in.transferTo(OutputStream.nullOutputStream());
+
+      size.originalBytes += original.length;
+      size.compressedBytes += compressedBytes;
+
+      return compressedBytes;
+    }
+  }
+
+  @Benchmark
+  public long decompress() throws IOException {
+    try (var in = new GZIPInputStream(new ByteArrayInputStream(compressed), 64 * 1024)) {
+      return in.transferTo(OutputStream.nullOutputStream());
+    }
+  }
+
+}
@@ -0,0 +1,84 @@
+package com.course.devops.blue.service.command.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.course.devops.blue.api.response.base.JsonBasePage;
+
+/**
+ * {@link FileStorageServiceImpl#list(String, int)} on an upload folder holding
+ * many (empty) files named like uploads (UUID): first page, and a page in the
+ * middle of the index (cursor). Folder is created in the temp directory and
+ * deleted afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileStorageServiceImplBenchmark {
+
+  @Param({ "10000", "100000" })
+  private int files;
+
+  private Path folder;
+
+  @Param({ "100" })
+  private int pageSize;
+
+  private FileStorageServiceImpl storageService;
+
+  private String middleCursor;
+
+  @Setup
+  public void setup() throws IOException {
+    folder = Files.createTempDirectory("devops-blue-list-");
+
+    for (int i = 0; i < files; i++) {
+      Files.createFile(folder.resolve(UUID.randomUUID().toString()));
+    }
+
+    storageService = new FileStorageServiceImpl();
+    storageService.init(folder.toString());
+
+    var page = storageService.list(null, files / 2);
+    middleCursor = page.getNextCursor();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    try (Stream<Path> paths = Files.walk(folder)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public JsonBasePage<String> firstPage() {
+    return storageService.list(null, pageSize);
+  }
+
+  @Benchmark
+  public JsonBasePage<String> middlePage() {
+    return storageService.list(middleCursor, pageSize);
+  }
+
+}
@@ -0,0 +1,172 @@
+package com.course.devops.blue.service.command.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.Resource;
+
+import com.course.devops.blue.service.command.ByteBufferResource;
+import com.course.devops.blue.service.command.FileStorageService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link SegmentFileStorageService} against one file per upload
+ * ({@link FileStorageServiceImpl}, sharded) for small images:
+ * <ul>
+ * <li><code>save</code> : store 10000 files into an empty storage (time per
+ * batch)</li>
+ * <li><code>load</code> : load a random file out of <code>files</code> and read
+ * it into a direct buffer, as a download does (from the mapped segment, or by
+ * opening and reading the file)</li>
+ * </ul>
+ * Storages are created in the temp directory and deleted afterwards.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SegmentFileStorageServiceBenchmark {
+
+  private static final int BATCH = 10000;
+
+  @State(Scope.Benchmark)
+  public static class StorageState {
+
+    @Param({ "plain", "segment" })
+    private String storage;
+
+    @Param({ "16384" })
+    private int size;
+
+    @Param({ "10000" })
+    private int files;
+
+    private byte[] content;
+
+    private Path folder;
+
+    private FileStorageService storageService;
+
+    private String[] ids;
+
+    private ByteBuffer target;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      content = new byte[size];
+      new Random(42).nextBytes(content);
+      target = ByteBuffer.allocateDirect(size);
+
+      folder = Files.createTempDirectory("devops-blue-" + storage + "-");
+      storageService = newStorage(folder);
+      ids = new String[files];
+
+      for (int i = 0; i < files; i++) {
+        ids[i] = storageService.save(new ByteArrayInputStream(content), "image/png");
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      deleteFolder(folder);
+    }
+
+    private FileStorageService newStorage(Path folder) {
+      FileStorageService service = "segment".equals(storage)
+          ? new SegmentFileStorageService(storage, 256L * 1024 * 1024, 0.5, 3600, new SimpleMeterRegistry())
+          : new FileStorageServiceImpl(true);
+      service.init(folder.toString());
+
+      return service;
+    }
+
+  }
+
+  @State(Scope.Benchmark)
+  public static class EmptyStorageState {
+
+    private FileStorageService storageService;
+
+    private Path folder;
+
+    @Setup(Level.Iteration)
+    public void setup(StorageState state) throws IOException {
+      folder = Files.createTempDirectory("devops-blue-" + state.storage + "-");
+      storageService = state.newStorage(folder);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+      deleteFolder(folder);
+    }
+
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 2)
+  @Measurement(iterations = 5, batchSize = 1)
+  public int save(StorageState state, EmptyStorageState empty) {
+    for (int i = 0; i < BATCH; i++) {
+      empty.storageService.save(new ByteArrayInputStream(state.content), "image/png");
+    }
+
+    return BATCH;
+  }
+
+  @Benchmark
+  public int load(StorageState state) throws IOException {
+    var resource = state.storageService.load(state.ids[ThreadLocalRandom.current().nextInt(state.files)]);
+
+    return read(resource, state.target.clear());
+  }
+
+  private static int read(Resource resource, ByteBuffer target) throws IOException {
+    if (resource instanceof ByteBufferResource cached) {
+      target.put(cached.slice(0, cached.contentLength()));
+
+      return target.position();
+    }
+
+    try (var channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+      while (target.hasRemaining() && channel.read(target) > 0) {
+        // until full
+      }
+    }
+
+    return target.position();
+  }
+
+  private static void deleteFolder(Path folder) throws IOException {
+    try (Stream<Path> paths = Files.walk(folder)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+}
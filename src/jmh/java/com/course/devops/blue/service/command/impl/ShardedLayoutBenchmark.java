@@ -0,0 +1,120 @@
+package com.course.devops.blue.service.command.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.Resource;
+
+/**
+ * Flat against sharded layout of {@link FileStorageServiceImpl}, on an upload
+ * folder holding many (empty) files named like uploads (UUID):
+ * <ul>
+ * <li><code>lookup</code> : load a random stored file (path resolution and
+ * existence checks, as each download does)</li>
+ * <li><code>listFolder</code> : read the entries of the upload folder itself,
+ * as backup tools and <code>ls</code> do</li>
+ * <li><code>init</code> : scan the whole folder at startup</li>
+ * </ul>
+ * Default is 1M files, creating them takes a few minutes per layout; use
+ * <code>-p files=100000</code> for a quick run. Folder is created in the temp
+ * directory and deleted afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardedLayoutBenchmark {
+
+  @Param({ "1000000" })
+  private int files;
+
+  @Param({ "flat", "sharded" })
+  private String layout;
+
+  private Path folder;
+
+  private String[] ids;
+
+  private FileStorageServiceImpl storageService;
+
+  @Setup
+  public void setup() throws IOException {
+    folder = Files.createTempDirectory("devops-blue-layout-");
+    ids = new String[files];
+
+    var sharded = "sharded".equals(layout);
+
+    for (int i = 0; i < files; i++) {
+      ids[i] = UUID.randomUUID().toString();
+
+      var file = sharded ? folder.resolve(ids[i].substring(0, 2)).resolve(ids[i].substring(2, 4)).resolve(ids[i])
+          : folder.resolve(ids[i]);
+
+      Files.createDirectories(file.getParent());
+      Files.createFile(file);
+    }
+
+    storageService = newStorageService();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    try (Stream<Path> paths = Files.walk(folder)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public Resource lookup() {
+    return storageService.load(ids[ThreadLocalRandom.current().nextInt(files)]);
+  }
+
+  @Benchmark
+  public long listFolder() throws IOException {
+    try (var entries = Files.list(folder)) {
+      return entries.count();
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 3)
+  public FileStorageServiceImpl init() {
+    return newStorageService();
+  }
+
+  /**
+   * Sharded service on a flat folder would start migrating it, flat layout is
+   * served by a non-sharded service.
+   */
+  private FileStorageServiceImpl newStorageService() {
+    var service = new FileStorageServiceImpl("sharded".equals(layout));
+
+    service.init(folder.toString());
+
+    return service;
+  }
+
+}
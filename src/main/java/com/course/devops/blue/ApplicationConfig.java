@@ -1,28 +1,138 @@
 package com.course.devops.blue;
 
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.DispatcherServlet;
 
+import com.course.devops.blue.constant.DevopsApiConstants;
 import com.course.devops.blue.service.command.FileStorageService;
+import com.course.devops.blue.service.command.impl.CachingFileStorageService;
+import com.course.devops.blue.service.command.impl.CompressingFileStorageService;
+import com.course.devops.blue.service.command.impl.DedupFileStorageService;
 import com.course.devops.blue.service.command.impl.FileStorageServiceImpl;
+import com.course.devops.blue.service.command.impl.SegmentFileStorageService;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Configuration
 public class ApplicationConfig {
 
+  private static final String STORAGE_MODE_DEDUP = "dedup";
+
+  private static final String STORAGE_MODE_SEGMENT = "segment";
+
+  @Value("${devops.blue.storage.mode:plain}")
+  private String storageMode;
+
+  @Value("${devops.blue.storage.image-mode:}")
+  private String imageStorageMode;
+
+  @Value("${devops.blue.storage.doc-mode:}")
+  private String docStorageMode;
+
+  @Value("${devops.blue.storage.sharded:true}")
+  private boolean storageSharded;
+
+  @Value("${devops.blue.storage.segment.max-size:256MB}")
+  private DataSize segmentMaxSize;
+
+  @Value("${devops.blue.storage.segment.compact-dead-ratio:0.5}")
+  private double segmentCompactDeadRatio;
+
+  @Value("${devops.blue.storage.segment.compact-interval-seconds:60}")
+  private long segmentCompactIntervalSeconds;
+
+  @Value("${devops.blue.storage.compression.enabled:false}")
+  private boolean docCompressionEnabled;
+
+  @Value("${devops.blue.storage.compression.types:text/*,application/pdf,application/json,application/xml}")
+  private List<String> docCompressionTypes;
+
+  @Value("${devops.blue.storage.compression.level:6}")
+  private int docCompressionLevel;
+
+  @Value("${devops.blue.image-cache.enabled:false}")
+  private boolean imageCacheEnabled;
+
+  @Value("${devops.blue.image-cache.max-size:64MB}")
+  private DataSize imageCacheMaxSize;
+
+  @Value("${devops.blue.image-cache.max-file-size:1MB}")
+  private DataSize imageCacheMaxFileSize;
+
+  /**
+   * Multipart resolver as auto-configured, except for the streamed echo: its
+   * multipart body is echoed raw as it arrives, rather than parsed and spooled
+   * before the handler runs.
+   */
+  @Bean(name = DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+  public MultipartResolver multipartResolver(MultipartProperties multipartProperties) {
+    var resolver = new StandardServletMultipartResolver() {
+
+      @Override
+      public boolean isMultipart(HttpServletRequest request) {
+        return !DevopsApiConstants.ECHO_STREAM_PATH.equals(request.getServletPath()) && super.isMultipart(request);
+      }
+
+    };
+
+    resolver.setResolveLazily(multipartProperties.isResolveLazily());
+
+    return resolver;
+  }
+
   @Bean
-  public FileStorageService imageStorageService() {
-    var fss = new FileStorageServiceImpl();
+  public FileStorageService imageStorageService(MeterRegistry meterRegistry) {
+    var fss = storage("image", imageStorageMode, meterRegistry);
     fss.init("upload/image");
 
+    if (imageCacheEnabled) {
+      return new CachingFileStorageService("image", fss, imageCacheMaxSize.toBytes(),
+          imageCacheMaxFileSize.toBytes(), meterRegistry);
+    }
+
     return fss;
   }
 
   @Bean
-  public FileStorageService docStorageService() {
-    var fss = new FileStorageServiceImpl();
+  public FileStorageService docStorageService(MeterRegistry meterRegistry) {
+    var fss = storage("doc", docStorageMode, meterRegistry);
+
+    if (docCompressionEnabled) {
+      fss = new CompressingFileStorageService("doc", fss, docCompressionTypes, docCompressionLevel, meterRegistry);
+    }
+
     fss.init("upload/doc");
 
     return fss;
   }
 
+  /**
+   * @param mode storage mode of this bean, global mode if blank
+   */
+  private FileStorageService storage(String name, String mode, MeterRegistry meterRegistry) {
+    mode = StringUtils.defaultIfBlank(mode, storageMode);
+
+    if (STORAGE_MODE_DEDUP.equalsIgnoreCase(mode)) {
+      return new DedupFileStorageService(name, meterRegistry);
+    }
+
+    if (STORAGE_MODE_SEGMENT.equalsIgnoreCase(mode)) {
+      return new SegmentFileStorageService(name, segmentMaxSize.toBytes(), segmentCompactDeadRatio,
+          segmentCompactIntervalSeconds, meterRegistry);
+    }
+
+    return new FileStorageServiceImpl(storageSharded);
+  }
+
 }
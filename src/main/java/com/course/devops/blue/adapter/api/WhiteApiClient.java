@@ -6,7 +6,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 
-@FeignClient(url = "${devops.service.white.root-url}", name = "whiteApiClient")
+import com.course.devops.blue.adapter.api.config.WhiteApiClientConfiguration;
+
+@FeignClient(url = "${devops.service.white.root-url}", name = "whiteApiClient", configuration = WhiteApiClientConfiguration.class)
 public interface WhiteApiClient {
 
   @GetMapping(path = "/api/hello")
@@ -9,7 +9,9 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestHeader;
 
-@FeignClient(url = "${devops.service.yellow.root-url}", name = "yellowApiClient")
+import com.course.devops.blue.adapter.api.config.YellowApiClientConfiguration;
+
+@FeignClient(url = "${devops.service.yellow.root-url}", name = "yellowApiClient", configuration = YellowApiClientConfiguration.class)
 public interface YellowApiClient {
   @GetMapping(path = "/api/hello")
   String hello();
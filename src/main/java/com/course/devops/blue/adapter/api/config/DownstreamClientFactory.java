@@ -0,0 +1,188 @@
+package com.course.devops.blue.adapter.api.config;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import feign.Client;
+import feign.Request;
+import feign.httpclient.ApacheHttpClient;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Builds the Feign transport for each downstream service. In pooled mode every
+ * downstream gets its own keep-alive connection pool, so a slow downstream
+ * cannot take the connections of another one. Pool usage is exported as
+ * <code>httpcomponents.httpclient.pool.*</code> gauges, tagged with
+ * <code>httpclient=&lt;downstream name&gt;</code>.
+ * <p>
+ * The transport is wrapped with a per-downstream circuit breaker and bulkhead
+ * (see {@link ResilientClient}). Their state is exported as
+ * <code>resilience4j.circuitbreaker.*</code> and
+ * <code>resilience4j.bulkhead.*</code>, and every circuit state transition is
+ * counted in <code>devops.blue.downstream.circuitbreaker.transitions</code>.
+ * <p>
+ * When hedging is enabled, idempotent calls are hedged on top of that (see
+ * {@link HedgingClient}), so each attempt goes through the circuit breaker and
+ * bulkhead on its own.
+ */
+@Component
+@Slf4j
+public class DownstreamClientFactory {
+
+  private final MeterRegistry meterRegistry;
+
+  private final List<CloseableHttpClient> httpClients = new CopyOnWriteArrayList<>();
+
+  private final List<ExecutorService> hedgeExecutors = new CopyOnWriteArrayList<>();
+
+  private final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+
+  private final BulkheadRegistry bulkheadRegistry = BulkheadRegistry.ofDefaults();
+
+  public DownstreamClientFactory(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+
+    TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+    TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+  }
+
+  public Client client(String name, DownstreamServiceProperties service) {
+    var transport = transport(name, service);
+    var circuitBreaker = circuitBreaker(name, service.getCircuitBreaker());
+    var bulkhead = bulkhead(name, service.getBulkhead());
+
+    var client = (circuitBreaker == null && bulkhead == null) ? transport
+        : new ResilientClient(name, transport, circuitBreaker, bulkhead);
+
+    return hedged(name, client, service.getHedge());
+  }
+
+  private Client transport(String name, DownstreamServiceProperties service) {
+    var http = service.getHttp();
+
+    if (!http.isPooled()) {
+      log.info("Downstream {} uses non-pooled HTTP client", name);
+      return new Client.Default(null, null);
+    }
+
+    var connectionManager = new PoolingHttpClientConnectionManager(http.getTimeToLiveMillis(),
+        TimeUnit.MILLISECONDS);
+    connectionManager.setMaxTotal(http.getMaxConnections());
+    connectionManager.setDefaultMaxPerRoute(http.getMaxConnectionsPerRoute());
+    connectionManager.setValidateAfterInactivity(http.getValidateAfterInactivityMillis());
+
+    var requestConfig = RequestConfig.custom().setConnectTimeout(http.getConnectTimeoutMillis())
+        .setSocketTimeout(http.getReadTimeoutMillis())
+        .setConnectionRequestTimeout(http.getConnectionRequestTimeoutMillis()).build();
+
+    var httpClient = HttpClients.custom().setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig).evictExpiredConnections()
+        .evictIdleConnections(http.getIdleTimeoutMillis(), TimeUnit.MILLISECONDS).disableCookieManagement().build();
+
+    new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, name).bindTo(meterRegistry);
+    httpClients.add(httpClient);
+
+    log.info("Downstream {} uses pooled HTTP client, max connections {} ({} per route)", name,
+        http.getMaxConnections(), http.getMaxConnectionsPerRoute());
+
+    return new ApacheHttpClient(httpClient);
+  }
+
+  private CircuitBreaker circuitBreaker(String name, DownstreamServiceProperties.CircuitBreaker properties) {
+    if (!properties.isEnabled()) {
+      return null;
+    }
+
+    var config = CircuitBreakerConfig.custom().failureRateThreshold(properties.getFailureRateThreshold())
+        .slowCallRateThreshold(properties.getSlowCallRateThreshold())
+        .slowCallDurationThreshold(Duration.ofMillis(properties.getSlowCallDurationThresholdMillis()))
+        .slidingWindowSize(properties.getSlidingWindowSize())
+        .minimumNumberOfCalls(properties.getMinimumNumberOfCalls())
+        .waitDurationInOpenState(Duration.ofMillis(properties.getWaitDurationInOpenStateMillis()))
+        .permittedNumberOfCallsInHalfOpenState(properties.getPermittedNumberOfCallsInHalfOpenState())
+        .automaticTransitionFromOpenToHalfOpenEnabled(true).build();
+    var circuitBreaker = circuitBreakerRegistry.circuitBreaker(name, config);
+
+    circuitBreaker.getEventPublisher().onStateTransition(e -> {
+      var transition = e.getStateTransition();
+
+      log.warn("Circuit breaker {} : {} -> {}", name, transition.getFromState(), transition.getToState());
+      meterRegistry.counter("devops.blue.downstream.circuitbreaker.transitions", "name", name, "from",
+          transition.getFromState().name(), "to", transition.getToState().name()).increment();
+    });
+
+    return circuitBreaker;
+  }
+
+  private Bulkhead bulkhead(String name, DownstreamServiceProperties.Bulkhead properties) {
+    if (!properties.isEnabled()) {
+      return null;
+    }
+
+    var config = BulkheadConfig.custom().maxConcurrentCalls(properties.getMaxConcurrentCalls())
+        .maxWaitDuration(Duration.ofMillis(properties.getMaxWaitMillis())).build();
+
+    return bulkheadRegistry.bulkhead(name, config);
+  }
+
+  private Client hedged(String name, Client client, DownstreamServiceProperties.Hedge properties) {
+    if (!properties.isEnabled()) {
+      return client;
+    }
+
+    var executor = new ThreadPoolExecutor(0, properties.getMaxConcurrentAttempts(), 60, TimeUnit.SECONDS,
+        new SynchronousQueue<>(), new CustomizableThreadFactory("hedge-" + name + "-"));
+    hedgeExecutors.add(executor);
+
+    log.info("Downstream {} hedges GET calls after p{} latency, max hedge ratio {}", name,
+        properties.getPercentile(), properties.getMaxHedgeRatio());
+
+    return new HedgingClient(name, client, executor, properties, meterRegistry);
+  }
+
+  public Request.Options options(DownstreamServiceProperties service) {
+    var http = service.getHttp();
+
+    return new Request.Options(http.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS, http.getReadTimeoutMillis(),
+        TimeUnit.MILLISECONDS, true);
+  }
+
+  @PreDestroy
+  private void close() {
+    hedgeExecutors.forEach(ExecutorService::shutdownNow);
+
+    for (var httpClient : httpClients) {
+      try {
+        httpClient.close();
+      } catch (IOException e) {
+        log.warn("Cannot close downstream HTTP client : {}", e.getMessage());
+      }
+    }
+  }
+
+}
@@ -0,0 +1,174 @@
+package com.course.devops.blue.adapter.api.config;
+
+import lombok.Data;
+
+/**
+ * Settings of one downstream service, bound from
+ * <code>devops.service.&lt;name&gt;</code>.
+ */
+@Data
+public class DownstreamServiceProperties {
+
+  private String rootUrl;
+
+  private Http http = new Http();
+
+  private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+  private Bulkhead bulkhead = new Bulkhead();
+
+  private Hedge hedge = new Hedge();
+
+  /**
+   * HTTP transport of the Feign client.
+   */
+  @Data
+  public static class Http {
+
+    /**
+     * <code>true</code> to use a pooled, keep-alive connection manager,
+     * <code>false</code> for Feign default (<code>HttpURLConnection</code>).
+     */
+    private boolean pooled = true;
+
+    private int maxConnections = 200;
+
+    private int maxConnectionsPerRoute = 100;
+
+    private int connectTimeoutMillis = 1000;
+
+    private int readTimeoutMillis = 5000;
+
+    /**
+     * Max time to wait for a free pooled connection.
+     */
+    private int connectionRequestTimeoutMillis = 1000;
+
+    /**
+     * Pooled connections idle longer than this are closed.
+     */
+    private long idleTimeoutMillis = 30000;
+
+    /**
+     * Pooled connections are never reused after this age, so DNS / endpoint
+     * changes are picked up.
+     */
+    private long timeToLiveMillis = 300000;
+
+    /**
+     * Idle pooled connection is re-validated before reuse after this period.
+     */
+    private int validateAfterInactivityMillis = 2000;
+
+  }
+
+  /**
+   * Circuit breaker around every call to the downstream. Failures are I/O
+   * errors (including timeouts) and 5xx responses.
+   */
+  @Data
+  public static class CircuitBreaker {
+
+    private boolean enabled = true;
+
+    /**
+     * Failure percentage that opens the circuit.
+     */
+    private float failureRateThreshold = 50;
+
+    /**
+     * Slow call percentage that opens the circuit.
+     */
+    private float slowCallRateThreshold = 80;
+
+    /**
+     * Calls longer than this are counted as slow.
+     */
+    private long slowCallDurationThresholdMillis = 2000;
+
+    /**
+     * Number of most recent calls used to compute the rates.
+     */
+    private int slidingWindowSize = 50;
+
+    /**
+     * Rates are not evaluated until this many calls are recorded.
+     */
+    private int minimumNumberOfCalls = 20;
+
+    /**
+     * Time the circuit stays open before probing the downstream (half-open).
+     */
+    private long waitDurationInOpenStateMillis = 10000;
+
+    /**
+     * Number of probe calls allowed while half-open.
+     */
+    private int permittedNumberOfCallsInHalfOpenState = 5;
+
+  }
+
+  /**
+   * Cap on concurrent in-flight calls to the downstream.
+   */
+  @Data
+  public static class Bulkhead {
+
+    private boolean enabled = true;
+
+    private int maxConcurrentCalls = 50;
+
+    /**
+     * Max time a call waits for a free slot, 0 to reject immediately.
+     */
+    private long maxWaitMillis = 0;
+
+  }
+
+  /**
+   * Hedged requests for idempotent (GET) calls.
+   */
+  @Data
+  public static class Hedge {
+
+    private boolean enabled = false;
+
+    /**
+     * Latency percentile of recent calls after which a hedge is sent.
+     */
+    private double percentile = 95;
+
+    /**
+     * Hedge is never sent earlier than this.
+     */
+    private long minDelayMillis = 50;
+
+    /**
+     * Number of recent call latencies kept to compute the percentile.
+     */
+    private int windowSize = 256;
+
+    /**
+     * No hedge is sent until this many latencies are recorded.
+     */
+    private int minSamples = 32;
+
+    /**
+     * Max ratio of hedges to calls (e.g. 0.1 for 10%).
+     */
+    private double maxHedgeRatio = 0.1;
+
+    /**
+     * Max hedges that can be sent in a burst from saved budget.
+     */
+    private int maxBurst = 10;
+
+    /**
+     * Max attempts (primary and hedge) in flight at once; calls beyond this are
+     * sent without hedging on the caller thread.
+     */
+    private int maxConcurrentAttempts = 64;
+
+  }
+
+}
@@ -0,0 +1,20 @@
+package com.course.devops.blue.adapter.api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * Downstream services called by blue (<code>devops.service.*</code>).
+ */
+@Component
+@ConfigurationProperties(prefix = "devops.service")
+@Data
+public class DownstreamServicesProperties {
+
+  private DownstreamServiceProperties yellow = new DownstreamServiceProperties();
+
+  private DownstreamServiceProperties white = new DownstreamServiceProperties();
+
+}
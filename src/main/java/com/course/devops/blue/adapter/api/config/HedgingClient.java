@@ -0,0 +1,274 @@
+package com.course.devops.blue.adapter.api.config;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import feign.Client;
+import feign.Request;
+import feign.Request.Options;
+import feign.Response;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Feign transport decorator that hedges idempotent (GET) calls: when the first
+ * attempt has not answered after the configured percentile of recent latency,
+ * a second attempt is sent and whichever answers first wins. The losing
+ * attempt is cancelled if it has not started yet, otherwise its response is
+ * closed as soon as it arrives, so its connection goes back to the pool.
+ * <p>
+ * Hedges are throttled by a token budget: every call earns
+ * <code>max-hedge-ratio</code> token and every hedge spends one, so hedges can
+ * never exceed that ratio of traffic, even when the downstream is slow for
+ * everyone.
+ */
+public class HedgingClient implements Client {
+
+  private static final int BUDGET_SCALE = 1000;
+
+  private static final int RECOMPUTE_EVERY_SAMPLES = 16;
+
+  private final Client delegate;
+
+  private final ExecutorService executor;
+
+  private final double percentile;
+
+  private final long minDelayNanos;
+
+  private final int minSamples;
+
+  private final long[] latencyWindow;
+
+  private final AtomicLong latencyCount = new AtomicLong();
+
+  private volatile long hedgeDelayNanos = Long.MAX_VALUE;
+
+  private final long budgetPerCall;
+
+  private final long maxBudget;
+
+  private final AtomicLong budget = new AtomicLong();
+
+  private final Counter callCounter;
+
+  private final Counter hedgeCounter;
+
+  private final Counter hedgeWinCounter;
+
+  private final Counter throttledCounter;
+
+  public HedgingClient(String name, Client delegate, ExecutorService executor,
+      DownstreamServiceProperties.Hedge properties, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.executor = executor;
+    this.percentile = properties.getPercentile();
+    this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(properties.getMinDelayMillis());
+    this.minSamples = properties.getMinSamples();
+    this.latencyWindow = new long[properties.getWindowSize()];
+    this.budgetPerCall = Math.round(properties.getMaxHedgeRatio() * BUDGET_SCALE);
+    this.maxBudget = (long) properties.getMaxBurst() * BUDGET_SCALE;
+
+    this.callCounter = Counter.builder("devops.blue.downstream.hedge.calls").tag("name", name)
+        .description("Calls eligible for hedging").register(meterRegistry);
+    this.hedgeCounter = Counter.builder("devops.blue.downstream.hedge.sent").tag("name", name)
+        .description("Hedge attempts sent").register(meterRegistry);
+    this.hedgeWinCounter = Counter.builder("devops.blue.downstream.hedge.wins").tag("name", name)
+        .description("Calls answered by the hedge attempt").register(meterRegistry);
+    this.throttledCounter = Counter.builder("devops.blue.downstream.hedge.throttled").tag("name", name)
+        .description("Hedges not sent because the hedge budget was exhausted").register(meterRegistry);
+    Gauge.builder("devops.blue.downstream.hedge.delay", this, c -> c.currentHedgeDelayMillis()).tag("name", name)
+        .description("Current hedge delay (ms), -1 until enough samples").register(meterRegistry);
+  }
+
+  @Override
+  public Response execute(Request request, Options options) throws IOException {
+    if (request.httpMethod() != Request.HttpMethod.GET) {
+      return delegate.execute(request, options);
+    }
+
+    callCounter.increment();
+    depositBudget();
+
+    var winner = new AtomicReference<CompletableFuture<Response>>();
+    var primary = new CompletableFuture<Response>();
+
+    if (!submit(request, options, winner, primary)) {
+      return timed(request, options);
+    }
+
+    try {
+      return primary.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      // primary is slower than usual, hedge below
+    } catch (ExecutionException e) {
+      throw unwrap(e);
+    } catch (InterruptedException e) {
+      return interrupted(primary);
+    }
+
+    if (!withdrawBudget()) {
+      throttledCounter.increment();
+      return await(primary);
+    }
+
+    var hedge = new CompletableFuture<Response>();
+
+    if (!submit(request, options, winner, hedge)) {
+      return await(primary);
+    }
+
+    hedgeCounter.increment();
+
+    try {
+      return awaitEither(primary, hedge, winner);
+    } finally {
+      // whichever attempt did not win is no longer needed
+      (winner.get() == hedge ? primary : hedge).cancel(true);
+    }
+  }
+
+  private boolean submit(Request request, Options options, AtomicReference<CompletableFuture<Response>> winner,
+      CompletableFuture<Response> attempt) {
+    try {
+      var task = executor.submit(() -> {
+        try {
+          var response = timed(request, options);
+
+          // only the first successful attempt is handed over, the loser releases its connection
+          if (winner.compareAndSet(null, attempt)) {
+            attempt.complete(response);
+          } else {
+            response.close();
+            attempt.complete(null);
+          }
+        } catch (Throwable t) {
+          attempt.completeExceptionally(t);
+        }
+      });
+
+      attempt.whenComplete((r, t) -> {
+        if (attempt.isCancelled()) {
+          task.cancel(true);
+        }
+      });
+
+      return true;
+    } catch (RejectedExecutionException e) {
+      return false;
+    }
+  }
+
+  private Response awaitEither(CompletableFuture<Response> primary, CompletableFuture<Response> hedge,
+      AtomicReference<CompletableFuture<Response>> winner) throws IOException {
+    try {
+      CompletableFuture.anyOf(primary, hedge).join();
+    } catch (RuntimeException e) {
+      // one attempt failed, the other one may still succeed
+    }
+
+    Exception failure = null;
+
+    // the winner, if any, already holds the response; otherwise wait for the remaining attempt
+    for (var attempt : winner.get() == hedge ? Arrays.asList(hedge, primary) : Arrays.asList(primary, hedge)) {
+      try {
+        var response = await(attempt);
+
+        if (response != null) {
+          if (attempt == hedge) {
+            hedgeWinCounter.increment();
+          }
+
+          return response;
+        }
+      } catch (IOException | RuntimeException e) {
+        failure = e;
+      }
+    }
+
+    if (failure instanceof RuntimeException re) {
+      throw re;
+    }
+
+    throw failure != null ? (IOException) failure : new IOException("No hedge attempt answered");
+  }
+
+  private Response await(CompletableFuture<Response> attempt) throws IOException {
+    try {
+      return attempt.get();
+    } catch (ExecutionException e) {
+      throw unwrap(e);
+    } catch (InterruptedException e) {
+      return interrupted(attempt);
+    }
+  }
+
+  private Response interrupted(CompletableFuture<Response> attempt) throws IOException {
+    attempt.cancel(true);
+    Thread.currentThread().interrupt();
+
+    throw new IOException("Interrupted while waiting for downstream");
+  }
+
+  private Response timed(Request request, Options options) throws IOException {
+    var start = System.nanoTime();
+    var response = delegate.execute(request, options);
+
+    recordLatency(System.nanoTime() - start);
+
+    return response;
+  }
+
+  private IOException unwrap(ExecutionException e) {
+    var cause = e.getCause();
+
+    if (cause instanceof IOException ioe) {
+      return ioe;
+    }
+    if (cause instanceof RuntimeException re) {
+      throw re;
+    }
+
+    return new IOException(cause);
+  }
+
+  private void recordLatency(long nanos) {
+    var count = latencyCount.getAndIncrement();
+
+    latencyWindow[(int) (count % latencyWindow.length)] = nanos;
+
+    if (count + 1 >= minSamples && (count + 1) % RECOMPUTE_EVERY_SAMPLES == 0) {
+      var samples = Arrays.copyOf(latencyWindow, (int) Math.min(count + 1, latencyWindow.length));
+
+      Arrays.sort(samples);
+      var index = (int) Math.min(samples.length - 1, Math.ceil(percentile / 100 * samples.length) - 1);
+      hedgeDelayNanos = Math.max(minDelayNanos, samples[Math.max(0, index)]);
+    }
+  }
+
+  private void depositBudget() {
+    budget.getAndUpdate(b -> Math.min(maxBudget, b + budgetPerCall));
+  }
+
+  private boolean withdrawBudget() {
+    var before = budget.getAndUpdate(b -> b >= BUDGET_SCALE ? b - BUDGET_SCALE : b);
+
+    return before >= BUDGET_SCALE;
+  }
+
+  private double currentHedgeDelayMillis() {
+    var delay = hedgeDelayNanos;
+
+    return delay == Long.MAX_VALUE ? -1 : delay / 1_000_000d;
+  }
+
+}
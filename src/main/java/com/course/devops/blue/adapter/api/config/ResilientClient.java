@@ -0,0 +1,175 @@
+package com.course.devops.blue.adapter.api.config;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.course.devops.blue.exception.DownstreamUnavailableException;
+
+import feign.Client;
+import feign.Request;
+import feign.Request.Options;
+import feign.Response;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+/**
+ * Feign transport decorator that guards a downstream with a bulkhead (cap on
+ * concurrent calls) and a circuit breaker. Rejected calls never reach the
+ * network and fail with {@link DownstreamUnavailableException}.
+ * <p>
+ * A bulkhead permit is held until the response body is closed (Feign closes
+ * it once decoded), so slow body reads count as concurrent calls too.
+ * <p>
+ * Either guard may be <code>null</code> when disabled.
+ */
+public class ResilientClient implements Client {
+
+  private final String name;
+
+  private final Client delegate;
+
+  private final CircuitBreaker circuitBreaker;
+
+  private final Bulkhead bulkhead;
+
+  public ResilientClient(String name, Client delegate, CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+    this.name = name;
+    this.delegate = delegate;
+    this.circuitBreaker = circuitBreaker;
+    this.bulkhead = bulkhead;
+  }
+
+  @Override
+  public Response execute(Request request, Options options) throws IOException {
+    if (bulkhead != null) {
+      try {
+        bulkhead.acquirePermission();
+      } catch (BulkheadFullException e) {
+        throw new DownstreamUnavailableException(name, "too many concurrent calls", e);
+      }
+    }
+
+    if (bulkhead == null) {
+      return circuitBreaker != null ? executeWithCircuitBreaker(request, options)
+          : delegate.execute(request, options);
+    }
+
+    Response response = null;
+
+    try {
+      response = circuitBreaker != null ? executeWithCircuitBreaker(request, options)
+          : delegate.execute(request, options);
+
+      if (response.body() != null) {
+        response = response.toBuilder().body(new PermitReleasingBody(response.body(), bulkhead)).build();
+      }
+
+      return response;
+    } finally {
+      // no body to read, or the call failed
+      if (response == null || response.body() == null) {
+        bulkhead.onComplete();
+      }
+    }
+  }
+
+  private Response executeWithCircuitBreaker(Request request, Options options) throws IOException {
+    try {
+      circuitBreaker.acquirePermission();
+    } catch (CallNotPermittedException e) {
+      throw new DownstreamUnavailableException(name, "circuit breaker is " + circuitBreaker.getState(), e);
+    }
+
+    var start = circuitBreaker.getCurrentTimestamp();
+
+    try {
+      var response = delegate.execute(request, options);
+      var duration = circuitBreaker.getCurrentTimestamp() - start;
+
+      if (response.status() >= 500) {
+        circuitBreaker.onError(duration, circuitBreaker.getTimestampUnit(),
+            new IOException("Downstream " + name + " responded " + response.status()));
+      } else {
+        circuitBreaker.onSuccess(duration, circuitBreaker.getTimestampUnit());
+      }
+
+      return response;
+    } catch (IOException | RuntimeException e) {
+      circuitBreaker.onError(circuitBreaker.getCurrentTimestamp() - start, circuitBreaker.getTimestampUnit(), e);
+      throw e;
+    }
+  }
+
+  /**
+   * Response body releasing the bulkhead permit (once) when closed, either the
+   * body itself or its stream.
+   */
+  private static final class PermitReleasingBody implements Response.Body {
+
+    private final Response.Body body;
+
+    private final Bulkhead bulkhead;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private PermitReleasingBody(Response.Body body, Bulkhead bulkhead) {
+      this.body = body;
+      this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public Integer length() {
+      return body.length();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+      return body.isRepeatable();
+    }
+
+    @Override
+    public InputStream asInputStream() throws IOException {
+      return new FilterInputStream(body.asInputStream()) {
+
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            release();
+          }
+        }
+
+      };
+    }
+
+    @Override
+    public Reader asReader(Charset charset) throws IOException {
+      return new InputStreamReader(asInputStream(), charset);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        body.close();
+      } finally {
+        release();
+      }
+    }
+
+    private void release() {
+      if (released.compareAndSet(false, true)) {
+        bulkhead.onComplete();
+      }
+    }
+
+  }
+
+}
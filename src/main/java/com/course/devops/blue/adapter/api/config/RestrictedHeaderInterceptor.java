@@ -0,0 +1,30 @@
+package com.course.devops.blue.adapter.api.config;
+
+import java.util.Set;
+
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+
+/**
+ * Chain endpoints forward all incoming headers to the downstream service. The
+ * JDK <code>HttpURLConnection</code> silently drops the restricted /
+ * hop-by-hop ones (e.g. <code>Host</code>, <code>Connection</code>), so this
+ * interceptor drops the same set for any other transport, keeping the
+ * downstream request identical whichever transport is used.
+ */
+public class RestrictedHeaderInterceptor implements RequestInterceptor {
+
+  private static final Set<String> RESTRICTED_HEADERS = Set.of("access-control-request-headers",
+      "access-control-request-method", "connection", "content-length", "content-transfer-encoding", "host",
+      "keep-alive", "origin", "trailer", "transfer-encoding", "upgrade", "via");
+
+  @Override
+  public void apply(RequestTemplate template) {
+    for (var header : Set.copyOf(template.headers().keySet())) {
+      if (RESTRICTED_HEADERS.contains(header.toLowerCase())) {
+        template.removeHeader(header);
+      }
+    }
+  }
+
+}
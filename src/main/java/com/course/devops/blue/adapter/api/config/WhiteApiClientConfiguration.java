@@ -0,0 +1,35 @@
+package com.course.devops.blue.adapter.api.config;
+
+import org.springframework.context.annotation.Bean;
+
+import feign.Client;
+import feign.Request;
+import feign.RequestInterceptor;
+
+/**
+ * Feign configuration for <code>WhiteApiClient</code>. Deliberately not
+ * annotated with <code>@Configuration</code>, so it is only loaded into the
+ * white client context.
+ */
+public class WhiteApiClientConfiguration {
+
+  public static final String DOWNSTREAM_NAME = "white";
+
+  @Bean
+  public Client feignClient(DownstreamClientFactory downstreamClientFactory,
+      DownstreamServicesProperties downstreamServicesProperties) {
+    return downstreamClientFactory.client(DOWNSTREAM_NAME, downstreamServicesProperties.getWhite());
+  }
+
+  @Bean
+  public Request.Options feignRequestOptions(DownstreamClientFactory downstreamClientFactory,
+      DownstreamServicesProperties downstreamServicesProperties) {
+    return downstreamClientFactory.options(downstreamServicesProperties.getWhite());
+  }
+
+  @Bean
+  public RequestInterceptor restrictedHeaderInterceptor() {
+    return new RestrictedHeaderInterceptor();
+  }
+
+}
@@ -2,19 +2,22 @@ package com.course.devops.blue.api;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
@@ -22,33 +25,53 @@ import javax.validation.constraints.Pattern;
 
 import org.apache.commons.lang3.RandomUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.tika.Tika;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.course.devops.blue.api.response.HelloTimeResponse;
+import com.course.devops.blue.api.response.LoadScenarioResponse;
+import com.course.devops.blue.api.response.UploadProgressResponse;
+import com.course.devops.blue.api.response.base.JsonBasePage;
+import com.course.devops.blue.api.response.base.JsonBaseResponse;
 import com.course.devops.blue.constant.DevopsApiConstants;
 import com.course.devops.blue.filter.ApiResponseFilter;
-import com.course.devops.blue.load.CpuLoadThread;
-import com.course.devops.blue.load.MemoryLoadThread;
+import com.course.devops.blue.load.CpuLoadScenario;
+import com.course.devops.blue.load.DiskLoadScenario;
+import com.course.devops.blue.load.LoadScenarioEngine;
+import com.course.devops.blue.load.LockContentionLoadScenario;
+import com.course.devops.blue.load.MemoryLoadScenario;
+import com.course.devops.blue.load.ThreadLoadScenario;
+import com.course.devops.blue.load.UtilizationProfile;
+import com.course.devops.blue.scheduler.DelayedResponseScheduler;
 import com.course.devops.blue.service.command.FileStorageService;
+import com.course.devops.blue.service.command.ImageVariantService;
+import com.course.devops.blue.service.command.ResumableUploadService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.enums.ParameterIn;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -65,17 +88,21 @@ public class DevopsBlueApi {
 
   private static final String CONTENT_RETURN_AFTER_DELAY = "Return after %s second delay";
 
-  private static final Map<String, List<Integer>> MAP_RESPONSE_STATUS_CODE = new HashMap<>();
+  private static final int ECHO_STREAM_BUFFER_SIZE = 8192;
 
-  static {
-    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_2XX, List.of(200, 201, 202));
-    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_3XX, List.of(301, 302, 304, 307, 308));
-    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_4XX,
-        List.of(400, 401, 403, 404, 405, 406, 408, 413, 415, 429, 431));
-    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_5XX, List.of(500, 501, 502, 503, 504));
-    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_RANDOM, List.of(200, 201, 202, 301, 302, 304, 307, 308, 400,
-        401, 403, 404, 405, 406, 408, 413, 415, 429, 431, 500, 501, 502, 503, 504));
-  }
+  /**
+   * Upload prefix used for content type detection, enough for Tika magic
+   * detection of common document and image types.
+   */
+  private static final int UPLOAD_SNIFF_BYTES = 64 * 1024;
+
+  private static final String UPLOAD_SPOOL_PREFIX = "devops-blue-upload-";
+
+  private static final long LIST_MAX_PAGE_SIZE = 1000;
+
+  private static final long IMAGE_VARIANT_MAX_DIMENSION = 4096;
+
+  private static final long IMAGE_VARIANT_TIMEOUT_MS = 30000;
 
   @Autowired
   private FileStorageService docStorageService;
@@ -83,68 +110,120 @@ public class DevopsBlueApi {
   @Autowired
   private FileStorageService imageStorageService;
 
+  @Autowired
+  private DelayedResponseScheduler delayedResponseScheduler;
+
+  @Autowired
+  private FileDownloadWriter fileDownloadWriter;
+
+  @Autowired
+  private ResumableUploadService resumableUploadService;
+
+  @Autowired
+  private ImageVariantService imageVariantService;
+
+  @Autowired
+  private LoadScenarioEngine loadScenarioEngine;
+
+  @Value("${devops.blue.echo.max-body-bytes:0}")
+  private long echoMaxBodyBytes;
+
+  @Value("${devops.blue.load.mmap-folder:}")
+  private String loadMmapFolder;
+
+  @Value("${devops.blue.load.disk-folder:upload}")
+  private String loadDiskFolder;
+
   private final Tika tika = new Tika();
 
   @GetMapping(value = "/delay/{delay-second}", produces = MediaType.TEXT_PLAIN_VALUE)
   @Operation(summary = "Send a process, delayed for x second")
-  public String delay(
-      @Valid @Min(0) @Max(30) @PathVariable(name = "delay-second", required = true) @Parameter(description = "Delay time (in second)", example = "10") long delaySecond)
-      throws InterruptedException {
+  public DeferredResult<String> delay(
+      @Valid @Min(0) @Max(30) @PathVariable(name = "delay-second", required = true) @Parameter(description = "Delay time (in second)", example = "10") long delaySecond) {
     log.info("Calling delay");
-    TimeUnit.SECONDS.sleep(delaySecond);
 
-    return String.format(CONTENT_RETURN_AFTER_DELAY, delaySecond);
+    return delayedResponseScheduler.schedule(delaySecond, TimeUnit.SECONDS,
+        () -> String.format(CONTENT_RETURN_AFTER_DELAY, delaySecond));
   }
 
   @GetMapping(value = "/delay", produces = MediaType.TEXT_PLAIN_VALUE)
   @Operation(summary = "Send a process, delayed between min-max second (defined in request param). "
       + "If parameter is undefined, default to 0, and max default to 20.")
-  public String delayBetween(
+  public DeferredResult<String> delayBetween(
       @Min(0) @Max(30) @RequestParam(name = "min-delay-second", required = false, defaultValue = "0") @Parameter(description = "Min delay time (in second), default to 0", example = "2", schema = @Schema(defaultValue = "0", minimum = "0", maximum = "30", exclusiveMaximum = true)) long minDelaySecond,
-      @Min(0) @Max(30) @RequestParam(name = "max-delay-second", required = false, defaultValue = "20") @Parameter(description = "Max delay time (in second), default to 30. If max < min, max will be set to min.", example = "16") long maxDelaySecond)
-      throws InterruptedException {
+      @Min(0) @Max(30) @RequestParam(name = "max-delay-second", required = false, defaultValue = "20") @Parameter(description = "Max delay time (in second), default to 30. If max < min, max will be set to min.", example = "16") long maxDelaySecond) {
     log.info("Calling delay");
     if (maxDelaySecond < minDelaySecond) {
       maxDelaySecond = minDelaySecond;
     }
 
     var delaySecond = ThreadLocalRandom.current().nextLong(minDelaySecond, maxDelaySecond);
-    TimeUnit.SECONDS.sleep(delaySecond);
 
-    return String.format(CONTENT_RETURN_AFTER_DELAY, delaySecond);
+    return delayedResponseScheduler.schedule(delaySecond, TimeUnit.SECONDS,
+        () -> String.format(CONTENT_RETURN_AFTER_DELAY, delaySecond));
   }
 
   @RequestMapping(value = "/echo", produces = MediaType.TEXT_PLAIN_VALUE)
   @Operation(summary = "Echoing request")
-  public String echo(HttpServletRequest request, @RequestBody(required = false) byte[] rawBody) {
+  public void echo(HttpServletRequest request, HttpServletResponse response,
+      @RequestBody(required = false) byte[] rawBody) throws IOException {
     log.info("Calling echo");
-    final var sb = new StringBuilder();
+    response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+    response.setCharacterEncoding(EchoRenderer.CHARSET.name());
+
+    EchoRenderer.render(request, rawBody, response.getWriter());
+  }
 
-    if (request.isSecure()) {
-      sb.append("Protocol : " + request.getProtocol() + " (via secure TLS / HTTPS)\n\n");
-    } else {
-      sb.append("Protocol : " + request.getProtocol() + " (via plain HTTP)\n\n");
+  @RequestMapping(value = "/echo/stream", produces = MediaType.TEXT_PLAIN_VALUE)
+  @Operation(summary = "Echoing request, body is streamed back as-is without being held in memory "
+      + "(suitable for large body). Body beyond <code>max-body-bytes</code> is not echoed. Only query string "
+      + "parameters are echoed, a form or multipart body is echoed as-is (multipart is not parsed).")
+  @Parameter(name = "max-body-bytes", in = ParameterIn.QUERY, description = "Max body bytes to echo, default from <code>devops.blue.echo.max-body-bytes</code> (0 = unlimited)", example = "1048576", schema = @Schema(type = "integer", format = "int64"))
+  public void echoStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    log.info("Calling echo/stream");
+    // request parameters would read (and consume) a form-urlencoded body, query string only
+    var parameters = EchoRenderer.queryParameters(request);
+    var maxBodyBytes = parameters.containsKey("max-body-bytes")
+        ? NumberUtils.toLong(parameters.get("max-body-bytes")[0])
+        : 0;
+    var limit = echoMaxBodyBytes;
+
+    if (maxBodyBytes > 0) {
+      limit = limit > 0 ? Math.min(limit, maxBodyBytes) : maxBodyBytes;
+    }
+
+    response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+    final var out = response.getOutputStream();
+    final var in = request.getInputStream();
+
+    final var metadataWriter = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+
+    EchoRenderer.renderMetadata(request, parameters, metadataWriter);
+    metadataWriter.append("Body : ").flush();
+
+    // fixed-size buffer, heap use does not depend on body size
+    final var buffer = new byte[ECHO_STREAM_BUFFER_SIZE];
+    var total = 0L;
+
+    while (limit <= 0 || total < limit) {
+      var length = limit <= 0 ? buffer.length : (int) Math.min(buffer.length, limit - total);
+      var read = in.read(buffer, 0, length);
+
+      if (read == -1) {
+        break;
+      }
+
+      out.write(buffer, 0, read);
+      total += read;
     }
-    sb.append("Path : " + request.getServletPath() + "\n\n");
-    sb.append("Method : " + request.getMethod() + "\n\n");
-    sb.append("Headers :\n\n");
-    request.getHeaderNames().asIterator().forEachRemaining(hn -> {
-      request.getHeaders(hn).asIterator().forEachRemaining(hv -> {
-        sb.append(String.format("  %s : %s", hn, hv));
-        sb.append("\n");
-      });
-    });
-    sb.append("\n");
-    sb.append("Cookies : " + request.getCookies() + "\n\n");
-    sb.append("Parameters :\n");
-    request.getParameterMap().forEach((k, v) -> {
-      sb.append(String.format("  %s : %s", k, Arrays.asList(v)));
-      sb.append("\n");
-    });
-    sb.append("\n");
-    sb.append("Body : " + (rawBody != null ? new String(rawBody) : null));
 
-    return sb.toString();
+    if (total == 0) {
+      out.write("null".getBytes(StandardCharsets.UTF_8));
+    } else if (limit > 0 && total >= limit && in.read() != -1) {
+      out.write(String.format("\n\n[body truncated after %d bytes]", limit).getBytes(StandardCharsets.UTF_8));
+    }
   }
 
   @GetMapping(value = "/exception", produces = MediaType.TEXT_PLAIN_VALUE)
@@ -172,27 +251,160 @@ public class DevopsBlueApi {
   }
 
   @GetMapping(value = "/load/cpu", produces = MediaType.TEXT_PLAIN_VALUE)
-  @Operation(summary = "Generate fake CPU load for n seconds (call is non-blocking)")
-  public String fakeLoadCpu(@RequestParam(name = "cpu", required = true, defaultValue = "1") int cpu,
-      @RequestParam(name = "period-second", required = true, defaultValue = "0") int periodSecond) {
+  @Operation(summary = "Generate fake CPU load for n seconds (call is non-blocking), as a load scenario. Each core "
+      + "is loaded at the target utilization, or follows the utilization profile. Achieved utilization is "
+      + "reported in the scenario status.")
+  @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Load scenario started"),
+      @ApiResponse(responseCode = "400", description = "Invalid utilization profile"),
+      @ApiResponse(responseCode = "429", description = "Load budget exhausted") })
+  public String fakeLoadCpu(
+      @Min(1) @RequestParam(name = "cpu", required = true, defaultValue = "1") @Parameter(description = "Cores to load", example = "1") int cpu,
+      @Min(0) @RequestParam(name = "period-second", required = true, defaultValue = "0") @Parameter(description = "Load period (in second)", example = "60") int periodSecond,
+      @Min(0) @Max(100) @RequestParam(name = "utilization", required = false, defaultValue = "100") @Parameter(description = "Target utilization of each core (percent)", example = "35") int utilization,
+      @RequestParam(name = "profile", required = false) @Parameter(description = "Utilization over time instead of constant utilization, as <code>second:percent</code> points, linear in between (<code>0:35,600:35,660:80</code> holds 35% for 10 minutes, then ramps to 80% in 1 minute)", example = "0:35,600:35,660:80") String profile) {
     log.info("Calling load/cpu");
-    var executors = Executors.newFixedThreadPool(cpu);
-
-    for (int i = 0; i < cpu; i++) {
-      executors.execute(new CpuLoadThread("fake-cpu-" + i, periodSecond));
-    }
+    var utilizationProfile = StringUtils.isBlank(profile) ? UtilizationProfile.constant(utilization)
+        : UtilizationProfile.parse(profile);
+    var scenario = loadScenarioEngine.start(new CpuLoadScenario(cpu, periodSecond, utilizationProfile));
 
-    return String.format("Starting fake load over period %d second, cpu thread %d", periodSecond, cpu);
+    return String.format("Starting fake load over period %d second, cpu thread %d, utilization %s, scenario %s",
+        periodSecond, cpu, utilizationProfile, scenario.getScenarioId());
   }
 
   @GetMapping(value = "/load/memory", produces = MediaType.TEXT_PLAIN_VALUE)
-  @Operation(summary = "Generate fake memory load for n seconds (call is non-blocking)")
-  public String fakeLoadMemory(@RequestParam(name = "memory-mb", required = true, defaultValue = "0") int memory,
-      @RequestParam(name = "period-second", required = true, defaultValue = "0") int periodSecond) {
+  @Operation(summary = "Generate fake memory load for n seconds (call is non-blocking), as a load scenario. Memory "
+      + "grows during the ramp phase, is held, then released during the release phase.")
+  @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Load scenario started"),
+      @ApiResponse(responseCode = "400", description = "Phases longer than period, or churn without rate"),
+      @ApiResponse(responseCode = "429", description = "Load budget exhausted") })
+  public String fakeLoadMemory(
+      @Min(1) @RequestParam(name = "memory-mb", required = true, defaultValue = "1") @Parameter(description = "Memory to allocate (MB), live set in churn mode", example = "128") int memory,
+      @Min(0) @RequestParam(name = "period-second", required = true, defaultValue = "0") @Parameter(description = "Load period (in second)", example = "60") int periodSecond,
+      @Pattern(regexp = "heap|direct|mmap|churn") @RequestParam(name = "mode", required = false, defaultValue = "heap") @Parameter(description = "<code>heap</code> (byte arrays), <code>direct</code> (direct buffers), <code>mmap</code> (mapped tmpfs pages), <code>churn</code> (heap live set plus short-lived allocations)", schema = @Schema(type = "string", defaultValue = "heap", allowableValues = {
+          "heap", "direct", "mmap", "churn" })) String mode,
+      @Min(0) @RequestParam(name = "ramp-second", required = false) @Parameter(description = "Time to reach full memory, default to period minus 1 second", example = "30") Integer rampSecond,
+      @Min(0) @RequestParam(name = "release-second", required = false, defaultValue = "0") @Parameter(description = "Time to release memory at the end of period, 0 to release at once", example = "10") int releaseSecond,
+      @Min(0) @RequestParam(name = "churn-mb-per-second", required = false, defaultValue = "0") @Parameter(description = "Allocation rate of short-lived objects (churn mode)", example = "200") int churnMbPerSecond) {
     log.info("Calling load/memory");
-    Executors.newSingleThreadExecutor().execute(new MemoryLoadThread("fake-memory", memory, periodSecond));
+    var scenario = loadScenarioEngine.start(new MemoryLoadScenario(MemoryLoadScenario.Mode.valueOf(mode.toUpperCase()),
+        memory, periodSecond, rampSecond, releaseSecond, churnMbPerSecond, loadMmapFolder()));
+
+    return String.format("Starting fake load over period %d second, memory %d MB (%s), scenario %s", periodSecond,
+        memory, mode, scenario.getScenarioId());
+  }
+
+  /**
+   * Configured mmap folder, or tmpfs when present (mapped pages stay in memory)
+   */
+  private Path loadMmapFolder() {
+    if (StringUtils.isNotBlank(loadMmapFolder)) {
+      return Paths.get(loadMmapFolder);
+    }
+
+    var shm = Paths.get("/dev/shm");
+
+    return Files.isDirectory(shm) && Files.isWritable(shm) ? shm : Paths.get(System.getProperty("java.io.tmpdir"));
+  }
+
+  @GetMapping(value = "/load/disk", produces = MediaType.TEXT_PLAIN_VALUE)
+  @Operation(summary = "Generate fake disk I/O load for n seconds (call is non-blocking), as a load scenario. "
+      + "Blocks of a scratch file on the upload volume are read / written, IOPS, throughput and latency "
+      + "percentiles are reported in the scenario status.")
+  @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Load scenario started"),
+      @ApiResponse(responseCode = "400", description = "Block size not aligned for direct I/O"),
+      @ApiResponse(responseCode = "429", description = "Load budget exhausted"),
+      @ApiResponse(responseCode = "507", description = "Not enough disk space for scratch file") })
+  public String fakeLoadDisk(
+      @Min(0) @RequestParam(name = "period-second", required = true, defaultValue = "0") @Parameter(description = "Load period (in second)", example = "60") int periodSecond,
+      @Pattern(regexp = "read|write|mixed") @RequestParam(name = "operation", required = false, defaultValue = "write") @Parameter(description = "Read, write, or both (half each)", schema = @Schema(type = "string", defaultValue = "write", allowableValues = {
+          "read", "write", "mixed" })) String operation,
+      @Pattern(regexp = "sequential|random") @RequestParam(name = "pattern", required = false, defaultValue = "random") @Parameter(description = "Block positions", schema = @Schema(type = "string", defaultValue = "random", allowableValues = {
+          "sequential", "random" })) String pattern,
+      @Min(1) @Max(16384) @RequestParam(name = "block-kb", required = false, defaultValue = "4") @Parameter(description = "Block size (KB)", example = "4") int blockKb,
+      @Min(1) @Max(64) @RequestParam(name = "queue-depth", required = false, defaultValue = "4") @Parameter(description = "Concurrent operations", example = "4") int queueDepth,
+      @Min(1) @Max(65536) @RequestParam(name = "file-mb", required = false, defaultValue = "256") @Parameter(description = "Scratch file size (MB)", example = "256") int fileMb,
+      @Min(0) @RequestParam(name = "fsync-every", required = false, defaultValue = "0") @Parameter(description = "Force writes to disk every n writes, 0 to never force", example = "0") int fsyncEvery,
+      @RequestParam(name = "direct", required = false, defaultValue = "false") @Parameter(description = "Bypass page cache (O_DIRECT) when supported by the file system") boolean direct,
+      @Min(0) @RequestParam(name = "rate-mb-per-second", required = false, defaultValue = "0") @Parameter(description = "Target throughput, 0 for unlimited", example = "50") int rateMbPerSecond) {
+    log.info("Calling load/disk");
+    var scenario = loadScenarioEngine.start(new DiskLoadScenario(
+        DiskLoadScenario.Operation.valueOf(operation.toUpperCase()),
+        DiskLoadScenario.Pattern.valueOf(pattern.toUpperCase()), blockKb, queueDepth, fileMb, fsyncEvery, direct,
+        rateMbPerSecond, periodSecond, Paths.get(loadDiskFolder)));
+
+    return String.format("Starting fake load over period %d second, disk %s %s, %d KB blocks, queue depth %d, "
+        + "scenario %s", periodSecond, pattern, operation, blockKb, queueDepth, scenario.getScenarioId());
+  }
+
+  @GetMapping(value = "/load/contention", produces = MediaType.TEXT_PLAIN_VALUE)
+  @Operation(summary = "Generate fake lock contention for n seconds (call is non-blocking), as a load scenario. "
+      + "Threads enter random monitors out of a few, and hold them for the critical section. Blocked count and "
+      + "time are reported in the scenario status.")
+  @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Load scenario started"),
+      @ApiResponse(responseCode = "429", description = "Load budget exhausted") })
+  public String fakeLoadContention(
+      @Min(0) @RequestParam(name = "period-second", required = true, defaultValue = "0") @Parameter(description = "Load period (in second)", example = "60") int periodSecond,
+      @Min(1) @Max(1024) @RequestParam(name = "threads", required = false, defaultValue = "8") @Parameter(description = "Contending threads", example = "8") int threads,
+      @Min(1) @Max(1024) @RequestParam(name = "locks", required = false, defaultValue = "1") @Parameter(description = "Monitors to contend on", example = "1") int locks,
+      @Min(0) @Max(1000000) @RequestParam(name = "critical-section-micros", required = false, defaultValue = "100") @Parameter(description = "Time a monitor is held (microsecond)", example = "100") int criticalSectionMicros,
+      @Min(0) @Max(1000000) @RequestParam(name = "think-micros", required = false, defaultValue = "0") @Parameter(description = "Time between two critical sections (microsecond)", example = "0") int thinkMicros) {
+    log.info("Calling load/contention");
+    var scenario = loadScenarioEngine.start(
+        new LockContentionLoadScenario(threads, locks, criticalSectionMicros, thinkMicros, periodSecond));
+
+    return String.format("Starting fake load over period %d second, %d threads on %d locks, scenario %s",
+        periodSecond, threads, locks, scenario.getScenarioId());
+  }
+
+  @GetMapping(value = "/load/threads", produces = MediaType.TEXT_PLAIN_VALUE)
+  @Operation(summary = "Generate fake thread count growth for n seconds (call is non-blocking), as a load "
+      + "scenario. Live thread count is ramped up to the target, then held. Thread counts are reported in the "
+      + "scenario status.")
+  @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Load scenario started"),
+      @ApiResponse(responseCode = "429", description = "Load budget exhausted") })
+  public String fakeLoadThreads(
+      @Min(0) @RequestParam(name = "period-second", required = true, defaultValue = "0") @Parameter(description = "Load period (in second)", example = "60") int periodSecond,
+      @Min(1) @Max(100000) @RequestParam(name = "threads", required = true, defaultValue = "100") @Parameter(description = "Threads to add", example = "1000") int threads,
+      @Min(0) @RequestParam(name = "ramp-second", required = false, defaultValue = "0") @Parameter(description = "Time to reach thread count, 0 to start all at once", example = "30") int rampSecond,
+      @Min(1) @RequestParam(name = "wake-millis", required = false, defaultValue = "1000") @Parameter(description = "Sleep time between two wake ups of each thread (millisecond)", example = "1000") int wakeMillis) {
+    log.info("Calling load/threads");
+    var scenario = loadScenarioEngine.start(new ThreadLoadScenario(threads, rampSecond, wakeMillis, periodSecond));
+
+    return String.format("Starting fake load over period %d second, %d threads, scenario %s", periodSecond, threads,
+        scenario.getScenarioId());
+  }
+
+  @GetMapping(value = "/load/scenarios", produces = MediaType.APPLICATION_JSON_VALUE)
+  @Operation(summary = "List load scenarios, running and recently finished")
+  public JsonBaseResponse<List<LoadScenarioResponse>> listLoadScenarios() {
+    log.info("Calling load/scenarios");
+    var startTime = System.currentTimeMillis();
+
+    return new JsonBaseResponse<>(startTime, loadScenarioEngine.list());
+  }
+
+  @GetMapping(value = "/load/scenarios/{scenario-id}", produces = MediaType.APPLICATION_JSON_VALUE)
+  @Operation(summary = "Status of load scenario")
+  @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Load scenario status"),
+      @ApiResponse(responseCode = "404", description = "Load scenario not found") })
+  public JsonBaseResponse<LoadScenarioResponse> loadScenario(
+      @PathVariable(name = "scenario-id", required = true) @Parameter(description = "Load scenario id") String scenarioId) {
+    log.info("Calling load/scenarios/id");
+    var startTime = System.currentTimeMillis();
+
+    return new JsonBaseResponse<>(startTime, loadScenarioEngine.status(scenarioId));
+  }
+
+  @DeleteMapping(value = "/load/scenarios/{scenario-id}", produces = MediaType.APPLICATION_JSON_VALUE)
+  @Operation(summary = "Cancel load scenario")
+  @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Load scenario cancelled"),
+      @ApiResponse(responseCode = "404", description = "Load scenario not found") })
+  public JsonBaseResponse<LoadScenarioResponse> cancelLoadScenario(
+      @PathVariable(name = "scenario-id", required = true) @Parameter(description = "Load scenario id") String scenarioId) {
+    log.info("Calling delete load/scenarios/id");
+    var startTime = System.currentTimeMillis();
 
-    return String.format("Starting fake load over period %d second, memory %d MB", periodSecond, memory);
+    return new JsonBaseResponse<>(startTime, loadScenarioEngine.cancel(scenarioId));
   }
 
   @GetMapping(value = "/hello", produces = MediaType.TEXT_PLAIN_VALUE)
@@ -204,60 +416,117 @@ public class DevopsBlueApi {
   }
 
   @GetMapping(value = "/docs", produces = MediaType.APPLICATION_JSON_VALUE)
-  @Operation(summary = "List existing doc uuid")
-  public List<String> listDocs() {
+  @Operation(summary = "List existing doc uuid, paginated by cursor (sorted by uuid)")
+  public JsonBaseResponse<JsonBasePage<String>> listDocs(
+      @RequestParam(name = "cursor", required = false) @Parameter(description = "<code>nextCursor</code> of previous page, empty for first page") String cursor,
+      @Min(1) @Max(LIST_MAX_PAGE_SIZE) @RequestParam(name = "size", required = false, defaultValue = "100") @Parameter(description = "Page size (max 1000)", example = "100") int size) {
     log.info("Calling docs");
-    return docStorageService.list();
+    var startTime = System.currentTimeMillis();
+
+    return new JsonBaseResponse<>(startTime, docStorageService.list(StringUtils.trimToNull(cursor), size));
   }
 
   @GetMapping(value = "/images", produces = MediaType.APPLICATION_JSON_VALUE)
-  @Operation(summary = "List existing image uuid")
-  public List<String> listImages() {
+  @Operation(summary = "List existing image uuid, paginated by cursor (sorted by uuid)")
+  public JsonBaseResponse<JsonBasePage<String>> listImages(
+      @RequestParam(name = "cursor", required = false) @Parameter(description = "<code>nextCursor</code> of previous page, empty for first page") String cursor,
+      @Min(1) @Max(LIST_MAX_PAGE_SIZE) @RequestParam(name = "size", required = false, defaultValue = "100") @Parameter(description = "Page size (max 1000)", example = "100") int size) {
     log.info("Calling images");
-    return imageStorageService.list();
+    var startTime = System.currentTimeMillis();
+
+    return new JsonBaseResponse<>(startTime, imageStorageService.list(StringUtils.trimToNull(cursor), size));
   }
 
   @GetMapping(value = "/image/{image-id}", produces = MediaType.TEXT_PLAIN_VALUE)
-  @Operation(summary = "Load existing image")
+  @Operation(summary = "Load existing image, supports <code>Range</code> requests")
   @ApiResponses(value = { @ApiResponse(responseCode = "404", description = "Image id not found"),
+      @ApiResponse(responseCode = "206", description = "Requested range(s) of image"),
+      @ApiResponse(responseCode = "304", description = "Image not modified (If-None-Match / If-Modified-Since)"),
+      @ApiResponse(responseCode = "416", description = "Requested range not satisfiable"),
+      @ApiResponse(responseCode = "413", description = "Image too large to be resized"),
+      @ApiResponse(responseCode = "415", description = "Image cannot be decoded for resizing"),
+      @ApiResponse(responseCode = "503", description = "Too many image variants being rendered"),
       @ApiResponse(responseCode = "200", description = "Image", content = {
           @Content(mediaType = MediaType.IMAGE_PNG_VALUE), @Content(mediaType = MediaType.IMAGE_JPEG_VALUE),
           @Content(mediaType = MediaType.IMAGE_GIF_VALUE) })
 
   })
-  public ResponseEntity<Resource> loadImage(
-      @PathVariable(name = "image-id", required = true) @Parameter(description = "Image uuid to be loaded") String imageId)
+  public DeferredResult<ResponseEntity<Resource>> loadImage(HttpServletRequest request, HttpServletResponse response,
+      @PathVariable(name = "image-id", required = true) @Parameter(description = "Image uuid to be loaded") String imageId,
+      @Min(1) @Max(IMAGE_VARIANT_MAX_DIMENSION) @RequestParam(name = "w", required = false) @Parameter(description = "Resize to fit this width (keeps aspect ratio, never upscaled)", example = "320") Integer width,
+      @Min(1) @Max(IMAGE_VARIANT_MAX_DIMENSION) @RequestParam(name = "h", required = false) @Parameter(description = "Resize to fit this height (keeps aspect ratio, never upscaled)", example = "240") Integer height,
+      @Pattern(regexp = "png|jpg|jpeg|gif") @RequestParam(name = "fmt", required = false) @Parameter(description = "Convert to format, default to original format", schema = @Schema(type = "string", allowableValues = {
+          "png", "jpg", "gif" })) String format)
       throws IOException {
     log.info("Calling image/id");
-    var file = imageStorageService.load(imageId);
 
-    if (file != null) {
-      return ResponseEntity.ok()
-          .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getFilename() + "\"")
-          .header(HttpHeaders.CONTENT_TYPE, tika.detect(file.getInputStream())).body(file);
-    } else {
-      return ResponseEntity.notFound().build();
+    if (width == null && height == null && format == null) {
+      download(request, response, imageStorageService, imageId);
+      return null;
+    }
+
+    var metadata = imageStorageService.metadata(imageId);
+
+    if (metadata == null) {
+      response.setStatus(HttpStatus.NOT_FOUND.value());
+      return null;
+    }
+
+    var variantFormat = variantFormat(format, metadata.getContentType());
+    var variantId = imageId + "-" + (width != null ? width : 0) + "x" + (height != null ? height : 0) + "."
+        + variantFormat;
+
+    // variants never change either, same validators as the original
+    if (fileDownloadWriter.checkNotModified(request, response, variantId, metadata)) {
+      return null;
+    }
+
+    var result = new DeferredResult<ResponseEntity<Resource>>(IMAGE_VARIANT_TIMEOUT_MS);
+
+    imageVariantService.variant(imageId, width, height, variantFormat).whenComplete((file, e) -> {
+      if (e != null) {
+        result.setErrorResult(e instanceof CompletionException ? e.getCause() : e);
+        return;
+      }
+
+      result.setResult(ResponseEntity.ok().contentType(MediaTypeFactory.getMediaType(file.getFileName().toString())
+          .orElse(MediaType.APPLICATION_OCTET_STREAM))
+          .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + variantId + "\"")
+          .body(new FileSystemResource(file)));
+    });
+
+    return result;
+  }
+
+  /**
+   * Requested format, or the original's when it has an image writer (png
+   * otherwise).
+   */
+  private static String variantFormat(String format, String contentType) {
+    if (format == null) {
+      format = switch (StringUtils.defaultString(contentType)) {
+      case MediaType.IMAGE_JPEG_VALUE -> ImageVariantService.FORMAT_JPEG;
+      case MediaType.IMAGE_GIF_VALUE -> "gif";
+      default -> "png";
+      };
     }
+
+    return "jpeg".equals(format) ? ImageVariantService.FORMAT_JPEG : format;
   }
 
   @GetMapping(value = "/doc/{doc-id}", produces = MediaType.TEXT_PLAIN_VALUE)
-  @Operation(summary = "Load existing doc")
+  @Operation(summary = "Load existing doc, supports <code>Range</code> requests")
   @ApiResponses(value = { @ApiResponse(responseCode = "404", description = "Document id not found"),
+      @ApiResponse(responseCode = "206", description = "Requested range(s) of document"),
+      @ApiResponse(responseCode = "304", description = "Document not modified (If-None-Match / If-Modified-Since)"),
+      @ApiResponse(responseCode = "416", description = "Requested range not satisfiable"),
       @ApiResponse(responseCode = "200", description = "Non-image document", content = {
           @Content(mediaType = MediaType.APPLICATION_PDF_VALUE) }) })
-  public ResponseEntity<Resource> loadPdf(
+  public void loadPdf(HttpServletRequest request, HttpServletResponse response,
       @PathVariable(name = "doc-id", required = true) @Parameter(description = "Document uuid to be loaded") String imageId)
       throws IOException {
     log.info("Calling doc/id");
-    var file = docStorageService.load(imageId);
-
-    if (file != null) {
-      return ResponseEntity.ok()
-          .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getFilename() + "\"")
-          .header(HttpHeaders.CONTENT_TYPE, tika.detect(file.getInputStream())).body(file);
-    } else {
-      return ResponseEntity.notFound().build();
-    }
+    download(request, response, docStorageService, imageId);
   }
 
   @GetMapping(value = "/log", produces = MediaType.TEXT_PLAIN_VALUE)
@@ -274,18 +543,16 @@ public class DevopsBlueApi {
   @GetMapping(value = "/status/{response-status-code}", produces = MediaType.TEXT_PLAIN_VALUE)
   @Operation(summary = "Send a process, delayed for random millisecond (0-1000 ms), with certain response status code (2xx, 3xx, 4xx, 5xx)."
       + " Use string <code>random</code> as parameter for generating random response status code.")
-  public ResponseEntity<String> status(
+  public DeferredResult<ResponseEntity<String>> status(
       @Pattern(regexp = "2xx|3xx|4xx|5xx|random") @PathVariable(name = "response-status-code", required = true) @Parameter(description = "Requested status code, or string <code>random</code>. Other values will generate response code 500.", example = "4xx", schema = @Schema(type = "string", allowableValues = {
-          "random", "2xx", "3xx", "4xx", "5xx" })) String responseStatusCode)
-      throws InterruptedException {
+          "random", "2xx", "3xx", "4xx", "5xx" })) String responseStatusCode) {
     log.info("Calling status");
     var delayMs = RandomUtils.nextInt(0, 1001);
-    TimeUnit.MILLISECONDS.sleep(delayMs);
 
-    var listStatus = MAP_RESPONSE_STATUS_CODE.get(responseStatusCode);
-    var status = listStatus.get(RandomUtils.nextInt(0, listStatus.size()));
+    var status = ResponseStatusCodes.random(responseStatusCode);
 
-    return ResponseEntity.status(status).body("Return after " + delayMs + " millisecond delay");
+    return delayedResponseScheduler.schedule(delayMs, TimeUnit.MILLISECONDS,
+        () -> ResponseEntity.status(status).body("Return after " + delayMs + " millisecond delay"));
   }
 
   @GetMapping(value = "/time", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -296,6 +563,34 @@ public class DevopsBlueApi {
         .currentTime(LocalTime.now().truncatedTo(ChronoUnit.SECONDS).format(DateTimeFormatter.ISO_TIME)).build();
   }
 
+  @DeleteMapping(value = "/doc/{doc-id}", produces = MediaType.TEXT_PLAIN_VALUE)
+  @Operation(summary = "Delete existing doc")
+  @ApiResponses(value = { @ApiResponse(responseCode = "204", description = "Document deleted"),
+      @ApiResponse(responseCode = "404", description = "Document id not found") })
+  public ResponseEntity<Void> deleteDoc(
+      @PathVariable(name = "doc-id", required = true) @Parameter(description = "Document uuid to be deleted") String docId) {
+    log.info("Calling delete doc/id");
+
+    return docStorageService.delete(docId) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+  }
+
+  @DeleteMapping(value = "/image/{image-id}", produces = MediaType.TEXT_PLAIN_VALUE)
+  @Operation(summary = "Delete existing image")
+  @ApiResponses(value = { @ApiResponse(responseCode = "204", description = "Image deleted"),
+      @ApiResponse(responseCode = "404", description = "Image id not found") })
+  public ResponseEntity<Void> deleteImage(
+      @PathVariable(name = "image-id", required = true) @Parameter(description = "Image uuid to be deleted") String imageId) {
+    log.info("Calling delete image/id");
+
+    if (!imageStorageService.delete(imageId)) {
+      return ResponseEntity.notFound().build();
+    }
+
+    imageVariantService.evict(imageId);
+
+    return ResponseEntity.noContent().build();
+  }
+
   @PostMapping(value = "/doc", produces = MediaType.TEXT_PLAIN_VALUE, consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
   @Operation(summary = "Upload document")
   @ApiResponses(value = { @ApiResponse(responseCode = "201", description = "Document saved"),
@@ -303,11 +598,14 @@ public class DevopsBlueApi {
   public ResponseEntity<String> uploadDoc(@RequestPart(name = "file", required = true) MultipartFile file)
       throws IOException {
     log.info("Calling doc");
-    if (StringUtils.startsWithIgnoreCase(tika.detect(file.getBytes()), "image")) {
+
+    var contentType = detectPrefix(file);
+
+    if (StringUtils.startsWithIgnoreCase(contentType, "image")) {
       return ResponseEntity.badRequest().body("Use endpoint /image to upload image");
     }
 
-    var savedFilename = docStorageService.save(file);
+    var savedFilename = saveUpload(docStorageService, file, contentType);
 
     return ResponseEntity.status(HttpStatus.CREATED).body("Saved : " + savedFilename);
   }
@@ -319,13 +617,137 @@ public class DevopsBlueApi {
   public ResponseEntity<String> uploadImage(@RequestPart(name = "file", required = true) MultipartFile file)
       throws IOException {
     log.info("Calling image");
-    if (!StringUtils.startsWithIgnoreCase(tika.detect(file.getBytes()), "image")) {
+
+    var contentType = detectPrefix(file);
+
+    if (!StringUtils.startsWithIgnoreCase(contentType, "image")) {
       return ResponseEntity.badRequest().body("Not an image (jpg / png / gif / ...)");
     }
 
-    var savedFilename = imageStorageService.save(file);
+    var savedFilename = saveUpload(imageStorageService, file, contentType);
 
     return ResponseEntity.status(HttpStatus.CREATED).body("Saved : " + savedFilename);
   }
 
-}
\ No newline at end of file
+  @PostMapping(value = "/doc/uploads", produces = MediaType.APPLICATION_JSON_VALUE)
+  @Operation(summary = "Start resumable upload of a (large) document, then PUT its chunks to "
+      + "<code>/doc/uploads/{upload-id}</code> and commit")
+  @ApiResponses(value = { @ApiResponse(responseCode = "201", description = "Upload session created"),
+      @ApiResponse(responseCode = "413", description = "Size above max upload size"),
+      @ApiResponse(responseCode = "503", description = "Too many upload sessions open") })
+  public ResponseEntity<JsonBaseResponse<UploadProgressResponse>> createDocUpload(
+      @Min(0) @RequestParam(name = "size", required = true) @Parameter(description = "Total document size (bytes)", example = "1073741824") long size) {
+    log.info("Calling doc/uploads");
+    var startTime = System.currentTimeMillis();
+
+    return ResponseEntity.status(HttpStatus.CREATED)
+        .body(new JsonBaseResponse<>(startTime, resumableUploadService.create(size)));
+  }
+
+  @PutMapping(value = "/doc/uploads/{upload-id}", produces = MediaType.APPLICATION_JSON_VALUE)
+  @Operation(summary = "Upload one chunk (raw request body) at its offset. Chunks may be sent in any order, in "
+      + "parallel, and again after a failure.")
+  @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Chunk written"),
+      @ApiResponse(responseCode = "404", description = "Upload session not found"),
+      @ApiResponse(responseCode = "416", description = "Chunk outside document size") })
+  public JsonBaseResponse<UploadProgressResponse> writeDocUploadChunk(HttpServletRequest request,
+      @PathVariable(name = "upload-id", required = true) @Parameter(description = "Upload session id") String uploadId,
+      @Min(0) @RequestParam(name = "offset", required = true) @Parameter(description = "Position of chunk in document (bytes)", example = "0") long offset)
+      throws IOException {
+    log.info("Calling doc/uploads/id");
+    var startTime = System.currentTimeMillis();
+
+    return new JsonBaseResponse<>(startTime,
+        resumableUploadService.write(uploadId, offset, request.getContentLengthLong(), request.getInputStream()));
+  }
+
+  @GetMapping(value = "/doc/uploads/{upload-id}", produces = MediaType.APPLICATION_JSON_VALUE)
+  @Operation(summary = "Progress of resumable upload (received ranges)")
+  @ApiResponses(value = { @ApiResponse(responseCode = "200", description = "Upload progress"),
+      @ApiResponse(responseCode = "404", description = "Upload session not found") })
+  public JsonBaseResponse<UploadProgressResponse> docUploadProgress(
+      @PathVariable(name = "upload-id", required = true) @Parameter(description = "Upload session id") String uploadId) {
+    log.info("Calling doc/uploads/id progress");
+    var startTime = System.currentTimeMillis();
+
+    return new JsonBaseResponse<>(startTime, resumableUploadService.progress(uploadId));
+  }
+
+  @PostMapping(value = "/doc/uploads/{upload-id}/commit", produces = MediaType.TEXT_PLAIN_VALUE)
+  @Operation(summary = "Store completely uploaded document")
+  @ApiResponses(value = { @ApiResponse(responseCode = "201", description = "Document saved"),
+      @ApiResponse(responseCode = "400", description = "Input is image"),
+      @ApiResponse(responseCode = "404", description = "Upload session not found"),
+      @ApiResponse(responseCode = "409", description = "Upload incomplete, or chunks still being written") })
+  public ResponseEntity<String> commitDocUpload(
+      @PathVariable(name = "upload-id", required = true) @Parameter(description = "Upload session id") String uploadId) {
+    log.info("Calling doc/uploads/id/commit");
+
+    return ResponseEntity.status(HttpStatus.CREATED).body("Saved : " + resumableUploadService.commit(uploadId));
+  }
+
+  @DeleteMapping(value = "/doc/uploads/{upload-id}", produces = MediaType.TEXT_PLAIN_VALUE)
+  @Operation(summary = "Abort resumable upload")
+  @ApiResponses(value = { @ApiResponse(responseCode = "204", description = "Upload aborted"),
+      @ApiResponse(responseCode = "404", description = "Upload session not found") })
+  public ResponseEntity<Void> abortDocUpload(
+      @PathVariable(name = "upload-id", required = true) @Parameter(description = "Upload session id") String uploadId) {
+    log.info("Calling delete doc/uploads/id");
+
+    return resumableUploadService.abort(uploadId) ? ResponseEntity.noContent().build()
+        : ResponseEntity.notFound().build();
+  }
+
+  private void download(HttpServletRequest request, HttpServletResponse response, FileStorageService storageService,
+      String fileId) throws IOException {
+    var metadata = storageService.metadata(fileId);
+
+    if (metadata == null) {
+      response.setStatus(HttpStatus.NOT_FOUND.value());
+      return;
+    }
+
+    // answered from metadata only, file is not opened
+    if (fileDownloadWriter.checkNotModified(request, response, fileId, metadata)) {
+      return;
+    }
+
+    var file = storageService.load(fileId);
+
+    if (file == null) {
+      response.setStatus(HttpStatus.NOT_FOUND.value());
+      return;
+    }
+
+    response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileId + "\"");
+    fileDownloadWriter.write(request, response, fileId, file, metadata);
+  }
+
+  /**
+   * Detect content type from the first bytes only, without reading the whole
+   * upload or holding it on heap.
+   */
+  private String detectPrefix(MultipartFile file) throws IOException {
+    try (var content = file.getInputStream()) {
+      return tika.detect(content.readNBytes(UPLOAD_SNIFF_BYTES));
+    }
+  }
+
+  /**
+   * Hand the part (already spooled to disk by the container) over to storage
+   * as a file, renamed rather than copied when possible, so storage can hash it
+   * before writing anything (dedup mode) or move it in place.
+   */
+  private String saveUpload(FileStorageService storage, MultipartFile file, String contentType) throws IOException {
+    var spooled = Files.createTempFile(UPLOAD_SPOOL_PREFIX, ".tmp");
+
+    try {
+      file.transferTo(spooled.toFile());
+
+      return storage.save(spooled, contentType);
+    } finally {
+      Files.deleteIfExists(spooled);
+    }
+  }
+
+}
@@ -1,17 +1,13 @@
 package com.course.devops.blue.api;
 
-import java.util.Arrays;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.Pattern;
 
-import org.apache.commons.lang3.RandomUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
@@ -25,6 +21,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import com.course.devops.blue.adapter.api.WhiteApiClient;
 import com.course.devops.blue.adapter.api.YellowApiClient;
+import com.course.devops.blue.chain.ChainCallExecutor;
 import com.course.devops.blue.constant.DevopsApiConstants;
 import com.course.devops.blue.filter.ApiResponseFilter;
 
@@ -45,17 +42,7 @@ public class DevopsBlueChainApi {
 
   private static final String CONTENT_BLUE_STRING = "  - Blue : %s";
 
-  private static final Map<String, List<Integer>> MAP_RESPONSE_STATUS_CODE = new HashMap<>();
-
-  static {
-    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_2XX, List.of(200, 201, 202));
-    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_3XX, List.of(301, 302, 304, 307, 308));
-    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_4XX,
-        List.of(400, 401, 403, 404, 405, 406, 408, 413, 415, 429, 431));
-    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_5XX, List.of(500, 501, 502, 503, 504));
-    MAP_RESPONSE_STATUS_CODE.put(DevopsApiConstants.STATUS_RANDOM, List.of(200, 201, 202, 301, 302, 304, 307, 308, 400,
-        401, 403, 404, 405, 406, 408, 413, 415, 429, 431, 500, 501, 502, 503, 504));
-  }
+  private static final String CONTENT_BLUE_PREFIX = "  - Blue : ";
 
   @Autowired
   private YellowApiClient yellowApiClient;
@@ -63,72 +50,38 @@ public class DevopsBlueChainApi {
   @Autowired
   private WhiteApiClient whiteApiClient;
 
+  @Autowired
+  private ChainCallExecutor chainCallExecutor;
+
   @RequestMapping(value = "/echo/one",produces = MediaType.TEXT_PLAIN_VALUE) 
-  public ResponseEntity<String> chainEchoOne(HttpServletRequest request, @RequestBody(required = false) byte[] rawBody) {
+  public ResponseEntity<String> chainEchoOne(HttpServletRequest request, @RequestBody(required = false) byte[] rawBody)
+      throws IOException {
     log.info("Calling chain/echo/one");
     final var sb = new StringBuilder();
     
-    final Map<String, Object> headersMap = Collections.list(request.getHeaderNames())    
-        .stream()
-        .collect(Collectors.toMap(
-            Function.identity(), 
-            h -> Collections.list(request.getHeaders(h))
-        ));
+    final var headersMap = forwardedHeaders(request);
 
     sb.append("Blue call yellow.echo. Final result is :");
     sb.append(StringUtils.LF);
-    sb.append(String.format(CONTENT_BLUE_STRING, echo(request, rawBody)));
+    sb.append(CONTENT_BLUE_PREFIX);
+    EchoRenderer.render(request, rawBody, sb);
     sb.append(StringUtils.LF);
     sb.append(String.format(CONTENT_YELLOW_STRING, yellowApiClient.echo(headersMap)));
 
     return ResponseEntity.ok().body(sb.toString());
   }
 
-  private String echo(HttpServletRequest request,byte[] rawBody) {
-    log.info("Calling echo");
-    final var sb = new StringBuilder();
-
-    if (request.isSecure()) {
-      sb.append("Protocol : " + request.getProtocol() + " (via secure TLS / HTTPS)\n\n");
-    } else {
-      sb.append("Protocol : " + request.getProtocol() + " (via plain HTTP)\n\n");
-    }
-    sb.append("Path : " + request.getServletPath() + "\n\n");
-    sb.append("Method : " + request.getMethod() + "\n\n");
-    sb.append("Headers :\n\n");
-    request.getHeaderNames().asIterator().forEachRemaining(hn -> {
-      request.getHeaders(hn).asIterator().forEachRemaining(hv -> {
-        sb.append(String.format("  %s : %s", hn, hv));
-        sb.append("\n");
-      });
-    });
-    sb.append("\n");
-    sb.append("Cookies : " + request.getCookies() + "\n\n");
-    sb.append("Parameters :\n");
-    request.getParameterMap().forEach((k, v) -> {
-      sb.append(String.format("  %s : %s", k, Arrays.asList(v)));
-      sb.append("\n");
-    });
-    sb.append("\n");
-    sb.append("Body : " + (rawBody != null ? new String(rawBody) : null));
-
-    return sb.toString();
-  }
-
   @RequestMapping(value = "/echo/two",produces = MediaType.TEXT_PLAIN_VALUE) 
-  public ResponseEntity<String> chainEchoTwo(HttpServletRequest request, @RequestBody(required = false) byte[] rawBody) {
+  public ResponseEntity<String> chainEchoTwo(HttpServletRequest request, @RequestBody(required = false) byte[] rawBody)
+      throws IOException {
     log.info("Calling chain/echo/two");
     final var sb = new StringBuilder();
-    final Map<String, Object> headersMap = Collections.list(request.getHeaderNames())    
-        .stream()
-        .collect(Collectors.toMap(
-            Function.identity(), 
-            h -> Collections.list(request.getHeaders(h))
-        ));
+    final var headersMap = forwardedHeaders(request);
 
     sb.append("Blue call yellow.echo and yellow call white.echo. Final result is :");
     sb.append(StringUtils.LF);
-    sb.append(String.format(CONTENT_BLUE_STRING, echo(request, rawBody)));
+    sb.append(CONTENT_BLUE_PREFIX);
+    EchoRenderer.render(request, rawBody, sb);
     sb.append(StringUtils.LF);
     sb.append(String.format(CONTENT_YELLOW_STRING, yellowApiClient.chainEcho(headersMap)));
 
@@ -142,14 +95,8 @@ public class DevopsBlueChainApi {
           "random", "2xx", "3xx", "4xx", "5xx" })) String responseStatusCode) {
     log.info("Calling chain/one");
     final var sb = new StringBuilder();
-    final var listStatusCode = MAP_RESPONSE_STATUS_CODE.get(responseStatusCode);
-    final var statusCode = listStatusCode.get(RandomUtils.nextInt(0, listStatusCode.size()));
-    final Map<String, Object> headersMap = Collections.list(request.getHeaderNames())    
-        .stream()
-        .collect(Collectors.toMap(
-            Function.identity(), 
-            h -> Collections.list(request.getHeaders(h))
-        ));
+    final var statusCode = ResponseStatusCodes.random(responseStatusCode);
+    final var headersMap = forwardedHeaders(request);
 
     sb.append("Blue call yellow. Final response is :");
     sb.append(StringUtils.LF);
@@ -161,28 +108,29 @@ public class DevopsBlueChainApi {
   }
 
   @GetMapping(value = "/{response-status-code}/two", produces = MediaType.TEXT_PLAIN_VALUE)
-  @Operation(summary = "Chain call to two other services, API from other service will produce 2xx, but this root API will produce response status code as requested on path variable")
+  @Operation(summary = "Chain call to two other services concurrently, API from other service will produce 2xx, but this root API will produce response status code as requested on path variable."
+      + " A service that does not answer before the chain deadline is reported with a <code>[timeout]</code> marker.")
   public ResponseEntity<String> chainTwo(HttpServletRequest request, 
       @Pattern(regexp = "2xx|3xx|4xx|5xx|random") @PathVariable(value = "response-status-code", required = true) @Parameter(description = "Requested status code, or string <code>random</code>. Other values will generate response code 500.", example = "4xx", schema = @Schema(type = "string", allowableValues = {
           "random", "2xx", "3xx", "4xx", "5xx" })) String responseStatusCode) {
     log.info("Calling chain/two");
     final var sb = new StringBuilder();
-    final var listStatusCode = MAP_RESPONSE_STATUS_CODE.get(responseStatusCode);
-    final var statusCode = listStatusCode.get(RandomUtils.nextInt(0, listStatusCode.size()));
-    final Map<String, Object> headersMap = Collections.list(request.getHeaderNames())    
-        .stream()
-        .collect(Collectors.toMap(
-            Function.identity(), 
-            h -> Collections.list(request.getHeaders(h))
-        ));
+    final var statusCode = ResponseStatusCodes.random(responseStatusCode);
+    final var headersMap = forwardedHeaders(request);
+
+    // yellow and white are independent, call both at once and wait for the slowest (up to deadline)
+    final var fanOut = chainCallExecutor.fanOut();
+    final var yellow = fanOut.submit("yellow",
+        () -> yellowApiClient.status(headersMap, DevopsApiConstants.STATUS_2XX));
+    final var white = fanOut.submit("white", () -> whiteApiClient.status(DevopsApiConstants.STATUS_2XX));
 
     sb.append("Blue call yellow, and blue call white. Final response is :");
     sb.append(StringUtils.LF);
     sb.append(String.format(CONTENT_BLUE_STRING, hello()));
     sb.append(StringUtils.LF);
-    sb.append(String.format(CONTENT_YELLOW_STRING, yellowApiClient.status(headersMap, DevopsApiConstants.STATUS_2XX)));
+    sb.append(String.format(CONTENT_YELLOW_STRING, fanOut.join(yellow)));
     sb.append(StringUtils.LF);
-    sb.append(String.format("  - White : %s", whiteApiClient.status(DevopsApiConstants.STATUS_2XX)));
+    sb.append(String.format("  - White : %s", fanOut.join(white)));
 
     return ResponseEntity.status(statusCode).body(sb.toString());
   }
@@ -194,14 +142,8 @@ public class DevopsBlueChainApi {
           "random", "2xx", "3xx", "4xx", "5xx" })) String responseStatusCode) {
     log.info("Calling chain/three");
     final var sb = new StringBuilder();
-    final var listStatusCode = MAP_RESPONSE_STATUS_CODE.get(responseStatusCode);
-    final var statusCode = listStatusCode.get(RandomUtils.nextInt(0, listStatusCode.size()));
-    final Map<String, Object> headersMap = Collections.list(request.getHeaderNames())    
-        .stream()
-        .collect(Collectors.toMap(
-            Function.identity(), 
-            h -> Collections.list(request.getHeaders(h))
-        ));
+    final var statusCode = ResponseStatusCodes.random(responseStatusCode);
+    final var headersMap = forwardedHeaders(request);
 
     sb.append("Blue call yellow, and yellow call white. Final response is :");
     sb.append(StringUtils.LF);
@@ -219,14 +161,8 @@ public class DevopsBlueChainApi {
           "random", "2xx", "3xx", "4xx", "5xx" })) String responseStatusCode) {
     log.info("Calling chain/four");
     final var sb = new StringBuilder();
-    final var listStatusCode = MAP_RESPONSE_STATUS_CODE.get(DevopsApiConstants.STATUS_2XX);
-    final var statusCode = listStatusCode.get(RandomUtils.nextInt(0, listStatusCode.size()));
-    final Map<String, Object> headersMap = Collections.list(request.getHeaderNames())    
-        .stream()
-        .collect(Collectors.toMap(
-            Function.identity(), 
-            h -> Collections.list(request.getHeaders(h))
-        ));
+    final var statusCode = ResponseStatusCodes.random(DevopsApiConstants.STATUS_2XX);
+    final var headersMap = forwardedHeaders(request);
 
     sb.append("Blue call yellow. Final response is :");
     sb.append(StringUtils.LF);
@@ -244,14 +180,8 @@ public class DevopsBlueChainApi {
           "random", "2xx", "3xx", "4xx", "5xx" })) String responseStatusCode) {
     log.info("Calling chain/five");
     final var sb = new StringBuilder();
-    final var listStatusCode = MAP_RESPONSE_STATUS_CODE.get(DevopsApiConstants.STATUS_2XX);
-    final var statusCode = listStatusCode.get(RandomUtils.nextInt(0, listStatusCode.size()));
-    final Map<String, Object> headersMap = Collections.list(request.getHeaderNames())    
-        .stream()
-        .collect(Collectors.toMap(
-            Function.identity(), 
-            h -> Collections.list(request.getHeaders(h))
-        ));
+    final var statusCode = ResponseStatusCodes.random(DevopsApiConstants.STATUS_2XX);
+    final var headersMap = forwardedHeaders(request);
 
     sb.append("Blue call yellow, and yellow call white. Final response is :");
     sb.append(StringUtils.LF);
@@ -262,6 +192,21 @@ public class DevopsBlueChainApi {
     return ResponseEntity.status(statusCode).body(sb.toString());
   }
 
+  /**
+   * Incoming headers, to be forwarded to downstream service.
+   */
+  private Map<String, Object> forwardedHeaders(HttpServletRequest request) {
+    final var headers = new HashMap<String, Object>();
+
+    for (var names = request.getHeaderNames(); names.hasMoreElements();) {
+      var name = names.nextElement();
+
+      headers.put(name, Collections.list(request.getHeaders(name)));
+    }
+
+    return headers;
+  }
+
   private String hello() {
     return String.format("Version [%s] Hello from app [%s] on k8s pod [%s]", ApiResponseFilter.APP_VERSION,
         ApiResponseFilter.getAppIdentifier(), ApiResponseFilter.getPodName());
@@ -0,0 +1,152 @@
+package com.course.devops.blue.api;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Renders the echo of a request (protocol, path, method, headers, cookies,
+ * parameters, body) straight into the target (response writer, string
+ * builder), without building intermediate strings per header.
+ * <p>
+ * Output is kept byte-for-byte identical to the original
+ * <code>StringBuilder</code> / <code>String.format</code> rendering, see
+ * <code>EchoRendererBenchmark</code>.
+ */
+public final class EchoRenderer {
+
+  /**
+   * Charset of echo responses, as the original <code>String</code> responses
+   * (message converter default)
+   */
+  public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+  private static final String SEPARATOR = " : ";
+
+  private static final String INDENT = "  ";
+
+  private EchoRenderer() {
+  }
+
+  /**
+   * Render full echo, including body.
+   *
+   * @param request the request
+   * @param rawBody request body, <code>null</code> if none
+   * @param out     target
+   * @throws IOException if target cannot be written
+   */
+  public static void render(HttpServletRequest request, byte[] rawBody, Appendable out) throws IOException {
+    renderMetadata(request, out);
+    out.append("Body : ");
+
+    if (rawBody != null) {
+      out.append(new String(rawBody));
+    } else {
+      out.append("null");
+    }
+  }
+
+  /**
+   * Render everything except body, ending with an empty line.
+   *
+   * @param request the request
+   * @param out     target
+   * @throws IOException if target cannot be written
+   */
+  public static void renderMetadata(HttpServletRequest request, Appendable out) throws IOException {
+    renderMetadata(request, request.getParameterMap(), out);
+  }
+
+  /**
+   * Render everything except body, ending with an empty line, with the given
+   * parameters (e.g. {@link #queryParameters(HttpServletRequest)} when the body
+   * must stay unread).
+   *
+   * @param request    the request
+   * @param parameters parameters to render
+   * @param out        target
+   * @throws IOException if target cannot be written
+   */
+  public static void renderMetadata(HttpServletRequest request, Map<String, String[]> parameters, Appendable out)
+      throws IOException {
+    out.append("Protocol : ").append(request.getProtocol());
+    out.append(request.isSecure() ? " (via secure TLS / HTTPS)\n\n" : " (via plain HTTP)\n\n");
+    out.append("Path : ").append(request.getServletPath()).append("\n\n");
+    out.append("Method : ").append(request.getMethod()).append("\n\n");
+    out.append("Headers :\n\n");
+
+    for (Enumeration<String> names = request.getHeaderNames(); names.hasMoreElements();) {
+      var name = names.nextElement();
+
+      for (Enumeration<String> values = request.getHeaders(name); values.hasMoreElements();) {
+        out.append(INDENT).append(name).append(SEPARATOR).append(values.nextElement()).append('\n');
+      }
+    }
+
+    out.append('\n');
+    // kept as-is for identical output, prints the array reference (or null)
+    out.append("Cookies : ").append(String.valueOf((Object) request.getCookies())).append("\n\n");
+    out.append("Parameters :\n");
+
+    for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+      out.append(INDENT).append(parameter.getKey()).append(SEPARATOR).append('[');
+
+      var values = parameter.getValue();
+
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0) {
+          out.append(", ");
+        }
+        out.append(values[i]);
+      }
+
+      out.append("]\n");
+    }
+
+    out.append('\n');
+  }
+
+  /**
+   * Parameters of the query string only. Unlike
+   * {@link HttpServletRequest#getParameterMap()}, a form-urlencoded body is not
+   * read.
+   *
+   * @param request the request
+   * @return parameters in query string order
+   */
+  public static Map<String, String[]> queryParameters(HttpServletRequest request) {
+    var values = new LinkedHashMap<String, List<String>>();
+    var query = request.getQueryString();
+
+    if (query != null) {
+      for (var pair : query.split("&")) {
+        if (pair.isEmpty()) {
+          continue;
+        }
+
+        var separator = pair.indexOf('=');
+        var name = separator < 0 ? pair : pair.substring(0, separator);
+        var value = separator < 0 ? "" : pair.substring(separator + 1);
+
+        values.computeIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8), k -> new ArrayList<>())
+            .add(URLDecoder.decode(value, StandardCharsets.UTF_8));
+      }
+    }
+
+    var parameters = new LinkedHashMap<String, String[]>();
+
+    values.forEach((name, list) -> parameters.put(name, list.toArray(String[]::new)));
+
+    return parameters;
+  }
+
+}
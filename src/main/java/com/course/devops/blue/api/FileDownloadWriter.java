@@ -0,0 +1,392 @@
+package com.course.devops.blue.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.course.devops.blue.service.command.ByteBufferResource;
+import com.course.devops.blue.service.command.CompressedResource;
+import com.course.devops.blue.service.command.FileMetadata;
+
+/**
+ * Writes a stored file to the response, honouring <code>Range</code> requests
+ * (single range, multiple ranges as <code>multipart/byteranges</code>,
+ * <code>416</code> when unsatisfiable).
+ * <p>
+ * A full file or a single range from disk is handed to Tomcat sendfile, so the
+ * kernel copies it to the socket and no request thread nor heap buffer is
+ * used. Otherwise (multiple ranges, small files, sendfile not available) the
+ * file is copied with {@link FileChannel#transferTo}, and cached content is
+ * written from its buffer.
+ * <p>
+ * Stored files never change once saved under their id, so validators
+ * (<code>ETag</code>, <code>Last-Modified</code>) come from the metadata and
+ * responses are cacheable forever.
+ * <p>
+ * A file stored compressed is sent as stored, with
+ * <code>Content-Encoding</code>, to clients accepting its encoding, and
+ * decompressed on the fly (whole file only) to others. Both representations
+ * have their own <code>ETag</code>.
+ */
+@Component
+public class FileDownloadWriter {
+
+  static final String SENDFILE_SUPPORTED_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+
+  static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+
+  static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+
+  static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+  /**
+   * Below this size, a plain write is cheaper than setting up sendfile (same
+   * threshold as Tomcat default servlet).
+   */
+  private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+
+  private static final String BYTES_UNIT = "bytes";
+
+  /**
+   * Content under an id never changes (<code>immutable</code> is not available
+   * in this Spring version's <code>CacheControl</code>)
+   */
+  private static final String CACHE_CONTROL_IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic()
+      .getHeaderValue() + ", immutable";
+
+  private static final String CRLF = "\r\n";
+
+  /**
+   * Set validators and cache headers, then evaluate conditional request
+   * headers against them, without touching the file.
+   *
+   * @param request  the request
+   * @param response the response
+   * @param fileId   stored file id
+   * @param metadata metadata of stored file
+   * @return <code>true</code> if response is complete (<code>304</code> /
+   *         <code>412</code>) and file must not be written
+   */
+  public boolean checkNotModified(HttpServletRequest request, HttpServletResponse response, String fileId,
+      FileMetadata metadata) {
+    response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL_IMMUTABLE);
+
+    if (metadata.getContentEncoding() != null) {
+      response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    return new ServletWebRequest(request, response)
+        .checkNotModified(etag(fileId, representation(request, metadata)), metadata.getCreatedAt());
+  }
+
+  /**
+   * Write file, or requested ranges of it.
+   *
+   * @param request  the request
+   * @param response the response, content disposition already set by caller
+   * @param fileId   stored file id
+   * @param file     stored file
+   * @param metadata metadata of stored file
+   * @throws IOException if file cannot be read or response cannot be written
+   */
+  public void write(HttpServletRequest request, HttpServletResponse response, String fileId, Resource file,
+      FileMetadata metadata) throws IOException {
+    if (file instanceof CompressedResource compressed) {
+      metadata = representation(request, metadata);
+
+      if (metadata.getContentEncoding() == null) {
+        writeDecompressed(request, response, compressed, metadata);
+        return;
+      }
+
+      response.setHeader(HttpHeaders.CONTENT_ENCODING, metadata.getContentEncoding());
+      file = compressed.getStored();
+    }
+
+    var length = metadata.getSize();
+    var ranges = isCurrent(request, fileId, metadata) ? requestedRanges(request, length) : null;
+
+    response.setHeader(HttpHeaders.ACCEPT_RANGES, BYTES_UNIT);
+
+    if (ranges == null) {
+      response.setStatus(HttpStatus.OK.value());
+      response.setContentType(metadata.getContentType());
+      response.setContentLengthLong(length);
+      writeRange(request, response, file, 0, length);
+    } else if (ranges.isEmpty()) {
+      response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+      response.setHeader(HttpHeaders.CONTENT_RANGE, BYTES_UNIT + " */" + length);
+    } else if (ranges.size() == 1) {
+      var range = ranges.get(0);
+
+      response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+      response.setContentType(metadata.getContentType());
+      response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(range, length));
+      response.setContentLengthLong(range[1] - range[0] + 1);
+      writeRange(request, response, file, range[0], range[1] + 1);
+    } else {
+      writeMultipleRanges(request, response, file, metadata, ranges);
+    }
+  }
+
+  /**
+   * Satisfiable ranges as <code>[first, last]</code> (inclusive).
+   *
+   * @return <code>null</code> for whole file (no range, invalid range header,
+   *         or ranges covering more than the file), empty if no range is
+   *         satisfiable
+   */
+  private List<long[]> requestedRanges(HttpServletRequest request, long length) {
+    var rangeHeader = request.getHeader(HttpHeaders.RANGE);
+
+    if (StringUtils.isBlank(rangeHeader)) {
+      return null;
+    }
+
+    List<HttpRange> httpRanges;
+
+    try {
+      httpRanges = HttpRange.parseRanges(rangeHeader);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+
+    var ranges = new ArrayList<long[]>(httpRanges.size());
+    var total = 0L;
+
+    for (var httpRange : httpRanges) {
+      var first = httpRange.getRangeStart(length);
+      var last = httpRange.getRangeEnd(length);
+
+      if (first < length && first <= last) {
+        ranges.add(new long[] { first, last });
+        total += last - first + 1;
+      }
+    }
+
+    // overlapping ranges asking for more than the file itself, send it once
+    return total > length ? null : ranges;
+  }
+
+  /**
+   * Whether <code>If-Range</code> (if any) still matches the stored file, so the
+   * requested ranges can be sent. Entity tags are compared strongly, dates must
+   * match exactly.
+   */
+  private boolean isCurrent(HttpServletRequest request, String fileId, FileMetadata metadata) {
+    var ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+
+    if (ifRange == null) {
+      return true;
+    }
+
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      return ifRange.equals(etag(fileId, metadata));
+    }
+
+    try {
+      return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == metadata.getCreatedAt() / 1000;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Strong entity tag, from id and creation time (content under an id never
+   * changes), and encoding of the representation sent.
+   */
+  static String etag(String fileId, FileMetadata metadata) {
+    var encoding = metadata.getContentEncoding() != null ? "-" + metadata.getContentEncoding() : "";
+
+    return "\"" + fileId + "-" + Long.toHexString(metadata.getCreatedAt()) + encoding + "\"";
+  }
+
+  /**
+   * Metadata of the representation sent : stored bytes with their encoding if
+   * the client accepts it, decompressed content otherwise.
+   */
+  private static FileMetadata representation(HttpServletRequest request, FileMetadata metadata) {
+    var encoding = metadata.getContentEncoding();
+
+    if (encoding == null) {
+      return metadata;
+    }
+
+    var builder = FileMetadata.builder().contentType(metadata.getContentType()).createdAt(metadata.getCreatedAt());
+
+    if (acceptsEncoding(request, encoding)) {
+      return builder.size(metadata.getEncodedSize()).contentEncoding(encoding).build();
+    }
+
+    return builder.size(metadata.getSize()).build();
+  }
+
+  /**
+   * Whether <code>Accept-Encoding</code> lists <code>encoding</code> (or
+   * <code>*</code>) with a non-zero quality.
+   */
+  private static boolean acceptsEncoding(HttpServletRequest request, String encoding) {
+    for (var headers = request.getHeaders(HttpHeaders.ACCEPT_ENCODING); headers.hasMoreElements();) {
+      for (var coding : StringUtils.split(headers.nextElement(), ',')) {
+        var parameters = StringUtils.split(coding, ';');
+        var name = parameters.length > 0 ? parameters[0].trim() : "";
+
+        if ((name.equalsIgnoreCase(encoding) || name.equals("*")) && !isZeroQuality(parameters)) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  private static boolean isZeroQuality(String[] parameters) {
+    for (int i = 1; i < parameters.length; i++) {
+      var parameter = parameters[i].trim();
+
+      if (StringUtils.startsWithIgnoreCase(parameter, "q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2)) == 0;
+        } catch (NumberFormatException e) {
+          return false;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Whole file, decompressed while written (ranges are not served on the
+   * decompressed representation).
+   */
+  private void writeDecompressed(HttpServletRequest request, HttpServletResponse response,
+      CompressedResource file, FileMetadata metadata) throws IOException {
+    response.setHeader(HttpHeaders.ACCEPT_RANGES, "none");
+    response.setStatus(HttpStatus.OK.value());
+    response.setContentType(metadata.getContentType());
+    response.setContentLengthLong(metadata.getSize());
+
+    if (isHead(request)) {
+      return;
+    }
+
+    try (var in = file.getInputStream()) {
+      StreamUtils.copy(in, response.getOutputStream());
+    }
+  }
+
+  private void writeMultipleRanges(HttpServletRequest request, HttpServletResponse response, Resource file,
+      FileMetadata metadata, List<long[]> ranges) throws IOException {
+    var boundary = MimeTypeUtils.generateMultipartBoundaryString();
+
+    response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+    response.setContentType("multipart/byteranges; boundary=" + boundary);
+
+    if (isHead(request)) {
+      return;
+    }
+
+    var out = response.getOutputStream();
+
+    for (var range : ranges) {
+      writeAscii(out, CRLF + "--" + boundary + CRLF);
+      writeAscii(out, HttpHeaders.CONTENT_TYPE + ": " + metadata.getContentType() + CRLF);
+      writeAscii(out, HttpHeaders.CONTENT_RANGE + ": " + contentRange(range, metadata.getSize()) + CRLF + CRLF);
+      transfer(file, range[0], range[1] + 1, out);
+    }
+
+    writeAscii(out, CRLF + "--" + boundary + "--" + CRLF);
+  }
+
+  /**
+   * Write bytes <code>[start, end)</code> of file.
+   */
+  private void writeRange(HttpServletRequest request, HttpServletResponse response, Resource file, long start,
+      long end) throws IOException {
+    if (isHead(request)) {
+      return;
+    }
+
+    if (end - start >= SENDFILE_MIN_BYTES && file.isFile()
+        && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTRIBUTE))) {
+      request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.getFile().getAbsolutePath());
+      request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+      request.setAttribute(SENDFILE_END_ATTRIBUTE, end);
+      return;
+    }
+
+    transfer(file, start, end, response.getOutputStream());
+  }
+
+  private void transfer(Resource file, long start, long end, OutputStream out) throws IOException {
+    if (file instanceof ByteBufferResource cached) {
+      var content = cached.slice(start, end);
+
+      // Tomcat copies straight from the (off-heap) buffer into its socket buffer
+      if (out instanceof CoyoteOutputStream coyoteOut) {
+        coyoteOut.write(content);
+      } else {
+        Channels.newChannel(out).write(content);
+      }
+      return;
+    }
+
+    if (!file.isFile()) {
+      try (var in = file.getInputStream()) {
+        StreamUtils.copyRange(in, out, start, end - 1);
+      }
+      return;
+    }
+
+    try (var channel = FileChannel.open(file.getFile().toPath(), StandardOpenOption.READ)) {
+      var target = Channels.newChannel(out);
+      var position = start;
+
+      while (position < end) {
+        var transferred = channel.transferTo(position, end - position, target);
+
+        if (transferred <= 0) {
+          throw new IOException("File truncated while writing " + file.getFilename());
+        }
+
+        position += transferred;
+      }
+    }
+  }
+
+  private static String contentRange(long[] range, long length) {
+    return BYTES_UNIT + " " + range[0] + "-" + range[1] + "/" + length;
+  }
+
+  private static boolean isHead(HttpServletRequest request) {
+    return HttpMethod.HEAD.matches(request.getMethod());
+  }
+
+  private static void writeAscii(OutputStream out, String text) throws IOException {
+    out.write(text.getBytes(StandardCharsets.US_ASCII));
+  }
+
+}
@@ -0,0 +1,41 @@
+package com.course.devops.blue.api;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.course.devops.blue.constant.DevopsApiConstants;
+
+/**
+ * Response status codes per group (<code>2xx</code>, <code>3xx</code>,
+ * <code>4xx</code>, <code>5xx</code>, <code>random</code>), shared by the
+ * status and chain endpoints.
+ * <p>
+ * Selection uses {@link ThreadLocalRandom}, so concurrent requests do not
+ * contend on a single shared <code>Random</code> seed.
+ */
+public final class ResponseStatusCodes {
+
+  private static final Map<String, List<Integer>> MAP_RESPONSE_STATUS_CODE = Map.of(DevopsApiConstants.STATUS_2XX,
+      List.of(200, 201, 202), DevopsApiConstants.STATUS_3XX, List.of(301, 302, 304, 307, 308),
+      DevopsApiConstants.STATUS_4XX, List.of(400, 401, 403, 404, 405, 406, 408, 413, 415, 429, 431),
+      DevopsApiConstants.STATUS_5XX, List.of(500, 501, 502, 503, 504), DevopsApiConstants.STATUS_RANDOM,
+      List.of(200, 201, 202, 301, 302, 304, 307, 308, 400, 401, 403, 404, 405, 406, 408, 413, 415, 429, 431, 500,
+          501, 502, 503, 504));
+
+  private ResponseStatusCodes() {
+  }
+
+  /**
+   * Pick a random status code from the group.
+   *
+   * @param group one of <code>DevopsApiConstants.STATUS_*</code>
+   * @return status code
+   */
+  public static int random(String group) {
+    var statusCodes = MAP_RESPONSE_STATUS_CODE.get(group);
+
+    return statusCodes.get(ThreadLocalRandom.current().nextInt(statusCodes.size()));
+  }
+
+}
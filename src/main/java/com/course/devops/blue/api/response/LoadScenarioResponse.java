@@ -0,0 +1,54 @@
+package com.course.devops.blue.api.response;
+
+import java.util.Map;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Status of a load scenario")
+public class LoadScenarioResponse {
+
+  @Schema(description = "Load scenario id")
+  private String scenarioId;
+
+  @Schema(description = "Load type (cpu, memory)")
+  private String type;
+
+  @Schema(description = "RUNNING, DONE, CANCELLED or FAILED")
+  private String state;
+
+  @Schema(description = "Load worker threads")
+  private int threads;
+
+  @Schema(description = "CPU cores reserved from the load budget")
+  private int cores;
+
+  @Schema(description = "Memory reserved from the load budget (MB)")
+  private int memoryMb;
+
+  @Schema(description = "Load period (second)")
+  private int durationSecond;
+
+  @Schema(description = "Time left in load period (second)")
+  private long remainingSecond;
+
+  @Schema(description = "Start time (ISO-8601)")
+  private String startedAt;
+
+  @Schema(description = "End time (ISO-8601), empty while running")
+  private String finishedAt;
+
+  @Schema(description = "Failure of a FAILED scenario")
+  private String failure;
+
+  @Schema(description = "Live statistics, depending on load type")
+  private Map<String, Object> stats;
+
+}
@@ -0,0 +1,33 @@
+package com.course.devops.blue.api.response;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Progress of a resumable upload")
+public class UploadProgressResponse {
+
+  @Schema(description = "Upload session id")
+  private String uploadId;
+
+  @Schema(description = "Total file size (bytes)")
+  private long size;
+
+  @Schema(description = "Bytes received so far")
+  private long receivedBytes;
+
+  @Schema(description = "Received byte ranges, as <code>first-last</code> (inclusive)")
+  private List<String> received;
+
+  @Schema(description = "Whether all bytes are received, and upload can be committed")
+  private boolean complete;
+
+}
@@ -25,7 +25,7 @@ public class JsonBasePage<T> {
   @Schema(description = "size of record per page")
   private int size;
 
-  @Schema(description = "page number (1 based)")
+  @Schema(description = "page number (1 based), 0 when paginated by cursor")
   private int page;
 
   @Schema(description = "total pages")
@@ -37,4 +37,7 @@ public class JsonBasePage<T> {
   @Schema(description = "actual data")
   private List<T> records;
 
+  @Schema(description = "cursor to request next page, null on last page (cursor pagination)")
+  private String nextCursor;
+
 }
@@ -0,0 +1,65 @@
+package com.course.devops.blue.chain;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.sleuth.instrument.async.TraceableExecutorService;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Bounded worker pool for downstream calls issued by chain endpoints. Tracing
+ * context is carried to the worker threads, so downstream spans stay on the
+ * same trace.
+ * <p>
+ * When the pool and its queue are full, the leg runs on the caller thread, so
+ * an overloaded pod degrades to sequential chain calls instead of failing.
+ */
+@Component
+public class ChainCallExecutor {
+
+  private final ThreadPoolExecutor pool;
+
+  private final ExecutorService executor;
+
+  private final long deadlineMillis;
+
+  private final MeterRegistry meterRegistry;
+
+  public ChainCallExecutor(@Value("${devops.blue.chain.threads:32}") int threads,
+      @Value("${devops.blue.chain.queue-capacity:256}") int queueCapacity,
+      @Value("${devops.blue.chain.deadline-millis:2500}") long deadlineMillis, BeanFactory beanFactory,
+      MeterRegistry meterRegistry) {
+    this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("chain-call-"),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    this.pool.allowCoreThreadTimeOut(true);
+    this.executor = new TraceableExecutorService(beanFactory, pool, "chain-call");
+    this.deadlineMillis = deadlineMillis;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Start a fan-out for the current request. All legs submitted to it share the
+   * same deadline, counted from now.
+   *
+   * @return fan-out for one request
+   */
+  public ChainFanOut fanOut() {
+    return new ChainFanOut(executor, deadlineMillis, meterRegistry);
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    pool.shutdownNow();
+  }
+
+}
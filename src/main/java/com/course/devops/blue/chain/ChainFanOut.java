@@ -0,0 +1,157 @@
+package com.course.devops.blue.chain;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Concurrent downstream calls for a single chain request. Every leg is started
+ * as soon as it is submitted, and joining a leg waits at most until the shared
+ * deadline of the request, so total latency is bounded by the slowest leg or
+ * the deadline, whichever comes first.
+ * <p>
+ * A leg that misses the deadline is cancelled : dropped if it is still queued,
+ * interrupted if it is running (a blocking socket read only ends at the client
+ * read timeout, so the pool thread may be held until then).
+ * <p>
+ * The first leg to fail fails the request, so it cancels the other legs the
+ * same way, and joining them rethrows its exception.
+ */
+@Slf4j
+public class ChainFanOut {
+
+  public static final String TIMEOUT_MARKER = "[timeout] no response from %s within %d ms";
+
+  private final ExecutorService executor;
+
+  private final long deadlineMillis;
+
+  private final long deadlineNanos;
+
+  private final MeterRegistry meterRegistry;
+
+  private final List<Leg<?>> legs = new CopyOnWriteArrayList<>();
+
+  private final AtomicReference<Leg<?>> failedLeg = new AtomicReference<>();
+
+  ChainFanOut(ExecutorService executor, long deadlineMillis, MeterRegistry meterRegistry) {
+    this.executor = executor;
+    this.deadlineMillis = deadlineMillis;
+    this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Start a downstream call.
+   *
+   * @param name name of the leg, used for timeout marker and metrics
+   * @param call the downstream call
+   * @return handle to be joined later
+   */
+  public <T> Leg<T> submit(String name, Supplier<T> call) {
+    var leg = new Leg<T>(name);
+
+    legs.add(leg);
+    leg.future = executor.submit(() -> {
+      try {
+        return call.get();
+      } catch (RuntimeException | Error e) {
+        fail(leg);
+        throw e;
+      }
+    });
+
+    var failed = failedLeg.get();
+
+    if (failed != null && failed != leg) {
+      // a sibling failed while this leg was being submitted
+      leg.future.cancel(true);
+    }
+
+    return leg;
+  }
+
+  private void fail(Leg<?> failed) {
+    if (!failedLeg.compareAndSet(null, failed)) {
+      return;
+    }
+
+    for (var leg : legs) {
+      if (leg != failed && leg.future != null && leg.future.cancel(true)) {
+        log.info("Chain leg {} cancelled, {} failed", leg.name, failed.name);
+      }
+    }
+  }
+
+  /**
+   * Wait for a leg until the request deadline.
+   *
+   * @param leg leg to be joined
+   * @return the leg result as string, or {@link #TIMEOUT_MARKER} if the leg did
+   *         not answer before the deadline
+   * @throws RuntimeException the exception thrown by the downstream call (e.g.
+   *                          <code>FeignClientException</code>), unwrapped, or
+   *                          by the failed leg this one was cancelled for
+   */
+  public String join(Leg<?> leg) {
+    try {
+      var remainingNanos = Math.max(0, deadlineNanos - System.nanoTime());
+
+      return String.valueOf(leg.future.get(remainingNanos, TimeUnit.NANOSECONDS));
+    } catch (CancellationException e) {
+      var failed = failedLeg.get();
+
+      if (failed != null && failed != leg) {
+        return join(failed);
+      }
+
+      return timeout(leg);
+    } catch (TimeoutException e) {
+      return timeout(leg);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException re) {
+        throw re;
+      }
+
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      throw new IllegalStateException("Interrupted while waiting for " + leg.name, e);
+    }
+  }
+
+  private String timeout(Leg<?> leg) {
+    leg.future.cancel(true);
+    meterRegistry.counter("devops.blue.chain.leg.timeout", "leg", leg.name).increment();
+    log.warn("Chain leg {} did not answer within {} ms", leg.name, deadlineMillis);
+
+    return String.format(TIMEOUT_MARKER, leg.name, deadlineMillis);
+  }
+
+  /**
+   * A downstream call in progress.
+   */
+  public static final class Leg<T> {
+
+    private final String name;
+
+    private volatile Future<T> future;
+
+    private Leg(String name) {
+      this.name = name;
+    }
+
+  }
+
+}
@@ -6,10 +6,18 @@ public final class ApiGenericExceptionHandlerConstants {
   public static final String CODE_API_CHAIN_CALL_ERROR = "chain_call_error";
   public static final String CODE_SQL_EXCEPTION = "sql_exception";
   public static final String CODE_UNREADABLE_REQUEST_BODY = "unreadable_request_body";
+  public static final String CODE_FILE_STORAGE_ERROR = "file_storage_error";
+  public static final String CODE_UPLOAD_SESSION_ERROR = "upload_session_error";
+  public static final String CODE_IMAGE_VARIANT_ERROR = "image_variant_error";
+  public static final String CODE_LOAD_SCENARIO_ERROR = "load_scenario_error";
   public static final String MESSAGE_BAD_INPUT_FROM_CLIENT = "Bad input from client";
   public static final String MESSAGE_API_CHAIN_CALL_ERROR = "Error on API chain call";
   public static final String MESSAGE_CANNOT_READ_REQUEST = "Cannot read request";
   public static final String MESSAGE_SQL_EXCEPTION = "SQL exception from server";
+  public static final String MESSAGE_FILE_STORAGE_ERROR = "Error on file storage";
+  public static final String MESSAGE_UPLOAD_SESSION_ERROR = "Error on resumable upload";
+  public static final String MESSAGE_IMAGE_VARIANT_ERROR = "Error on image variant";
+  public static final String MESSAGE_LOAD_SCENARIO_ERROR = "Error on load scenario";
   public static final String REASON_CANNOT_READ_REQUEST_BODY = "Cannot read request body. Check submmited data (e.g. format, content, ...)";
 
   private ApiGenericExceptionHandlerConstants() {
@@ -16,4 +16,9 @@ public final class DevopsApiConstants {
 
   public static final String STATUS_2XX = "2xx";
 
+  /**
+   * Servlet path of the streamed echo, whose body is never parsed as multipart
+   */
+  public static final String ECHO_STREAM_PATH = "/api/echo/stream";
+
 }
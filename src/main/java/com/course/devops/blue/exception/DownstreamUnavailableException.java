@@ -0,0 +1,22 @@
+package com.course.devops.blue.exception;
+
+/**
+ * Thrown without calling the downstream service, when its circuit is open or
+ * its bulkhead is full.
+ */
+public class DownstreamUnavailableException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String downstream;
+
+  public DownstreamUnavailableException(String downstream, String reason, Throwable cause) {
+    super(String.format("Downstream %s unavailable : %s", downstream, reason), cause);
+    this.downstream = downstream;
+  }
+
+  public String getDownstream() {
+    return downstream;
+  }
+
+}
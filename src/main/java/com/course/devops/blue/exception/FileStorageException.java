@@ -0,0 +1,14 @@
+package com.course.devops.blue.exception;
+
+/**
+ * Thrown when a file cannot be written to (or read from) the upload storage.
+ */
+public class FileStorageException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public FileStorageException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+}
@@ -0,0 +1,24 @@
+package com.course.devops.blue.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when an image variant cannot be rendered (original not decodable,
+ * render pool full, ...).
+ */
+public class ImageVariantException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final HttpStatus status;
+
+  public ImageVariantException(HttpStatus status, String message, Throwable cause) {
+    super(message, cause);
+    this.status = status;
+  }
+
+  public HttpStatus getStatus() {
+    return status;
+  }
+
+}
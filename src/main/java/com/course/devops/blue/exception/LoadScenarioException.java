@@ -0,0 +1,24 @@
+package com.course.devops.blue.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when a load scenario cannot be started or found (budget exhausted,
+ * unknown scenario id, ...).
+ */
+public class LoadScenarioException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final HttpStatus status;
+
+  public LoadScenarioException(HttpStatus status, String message) {
+    super(message);
+    this.status = status;
+  }
+
+  public HttpStatus getStatus() {
+    return status;
+  }
+
+}
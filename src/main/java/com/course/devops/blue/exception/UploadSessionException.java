@@ -0,0 +1,24 @@
+package com.course.devops.blue.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when a resumable upload request cannot be applied to its session
+ * (unknown session, chunk out of bounds, incomplete commit, ...).
+ */
+public class UploadSessionException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final HttpStatus status;
+
+  public UploadSessionException(HttpStatus status, String message) {
+    super(message);
+    this.status = status;
+  }
+
+  public HttpStatus getStatus() {
+    return status;
+  }
+
+}
@@ -15,6 +15,11 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import com.course.devops.blue.api.response.base.JsonBaseError;
 import com.course.devops.blue.api.response.base.JsonBaseResponse;
 import com.course.devops.blue.constant.ApiGenericExceptionHandlerConstants;
+import com.course.devops.blue.exception.DownstreamUnavailableException;
+import com.course.devops.blue.exception.FileStorageException;
+import com.course.devops.blue.exception.ImageVariantException;
+import com.course.devops.blue.exception.LoadScenarioException;
+import com.course.devops.blue.exception.UploadSessionException;
 
 import feign.FeignException.FeignClientException;
 
@@ -55,6 +60,101 @@ public class ApiGenericExceptionHandler {
         .body(body);
   }
 
+  /**
+   * Handle downstream call rejected without reaching the network (open circuit,
+   * full bulkhead).
+   * 
+   * @param e the exception
+   * @return generic-format JSON error message
+   */
+  @ExceptionHandler({ DownstreamUnavailableException.class })
+  public ResponseEntity<JsonBaseResponse<String>> handleDownstreamUnavailableException(
+      DownstreamUnavailableException e) {
+    var startTime = System.currentTimeMillis();
+
+    var genericError = JsonBaseError.builder().code(ApiGenericExceptionHandlerConstants.CODE_API_CHAIN_CALL_ERROR)
+        .message(ApiGenericExceptionHandlerConstants.MESSAGE_API_CHAIN_CALL_ERROR).reason(e.getMessage()).build();
+    var body = new JsonBaseResponse<String>(startTime, genericError);
+
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).body(body);
+  }
+
+  /**
+   * Handle file that cannot be stored or read.
+   * 
+   * @param e the exception
+   * @return generic-format JSON error message
+   */
+  @ExceptionHandler({ FileStorageException.class })
+  public ResponseEntity<JsonBaseResponse<String>> handleFileStorageException(FileStorageException e) {
+    var startTime = System.currentTimeMillis();
+
+    var genericError = JsonBaseError.builder().code(ApiGenericExceptionHandlerConstants.CODE_FILE_STORAGE_ERROR)
+        .message(ApiGenericExceptionHandlerConstants.MESSAGE_FILE_STORAGE_ERROR).reason(e.getMessage()).build();
+    var body = new JsonBaseResponse<String>(startTime, genericError);
+
+    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).body(body);
+  }
+
+  /**
+   * Handle resumable upload request rejected by its session, with the status
+   * chosen by the session.
+   * 
+   * @param e the exception
+   * @return generic-format JSON error message
+   */
+  @ExceptionHandler({ UploadSessionException.class })
+  public ResponseEntity<JsonBaseResponse<String>> handleUploadSessionException(UploadSessionException e) {
+    var startTime = System.currentTimeMillis();
+
+    var genericError = JsonBaseError.builder().code(ApiGenericExceptionHandlerConstants.CODE_UPLOAD_SESSION_ERROR)
+        .message(ApiGenericExceptionHandlerConstants.MESSAGE_UPLOAD_SESSION_ERROR).reason(e.getMessage()).build();
+    var body = new JsonBaseResponse<String>(startTime, genericError);
+
+    return ResponseEntity.status(e.getStatus()).header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .body(body);
+  }
+
+  /**
+   * Handle image variant that cannot be rendered, with the status chosen by the
+   * renderer.
+   * 
+   * @param e the exception
+   * @return generic-format JSON error message
+   */
+  @ExceptionHandler({ ImageVariantException.class })
+  public ResponseEntity<JsonBaseResponse<String>> handleImageVariantException(ImageVariantException e) {
+    var startTime = System.currentTimeMillis();
+
+    var genericError = JsonBaseError.builder().code(ApiGenericExceptionHandlerConstants.CODE_IMAGE_VARIANT_ERROR)
+        .message(ApiGenericExceptionHandlerConstants.MESSAGE_IMAGE_VARIANT_ERROR).reason(e.getMessage()).build();
+    var body = new JsonBaseResponse<String>(startTime, genericError);
+
+    return ResponseEntity.status(e.getStatus()).header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .body(body);
+  }
+
+  /**
+   * Handle load scenario that cannot be started or found, with the status chosen
+   * by the load engine.
+   * 
+   * @param e the exception
+   * @return generic-format JSON error message
+   */
+  @ExceptionHandler({ LoadScenarioException.class })
+  public ResponseEntity<JsonBaseResponse<String>> handleLoadScenarioException(LoadScenarioException e) {
+    var startTime = System.currentTimeMillis();
+
+    var genericError = JsonBaseError.builder().code(ApiGenericExceptionHandlerConstants.CODE_LOAD_SCENARIO_ERROR)
+        .message(ApiGenericExceptionHandlerConstants.MESSAGE_LOAD_SCENARIO_ERROR).reason(e.getMessage()).build();
+    var body = new JsonBaseResponse<String>(startTime, genericError);
+
+    return ResponseEntity.status(e.getStatus()).header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .body(body);
+  }
+
   /**
    * Handle validation exception thrown by request body invalid.
    * 
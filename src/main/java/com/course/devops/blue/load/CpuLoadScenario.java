@@ -0,0 +1,159 @@
+package com.course.devops.blue.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.lang3.RandomUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps <code>cpu</code> cores busy for the period, one worker per core, each
+ * at the target utilization of the profile (100% by default).
+ * <p>
+ * Below 100%, a worker alternates busy and sleep within a short cycle. Busy
+ * time of each cycle is corrected against the CPU time the thread really got
+ * ({@link ThreadMXBean}), so time lost to throttling, preemption or sleep
+ * overshoot is made up in the next cycles (bounded, so a throttled worker does
+ * not end up spinning non-stop).
+ */
+@Slf4j
+public class CpuLoadScenario extends LoadScenario {
+
+  public static final String TYPE = "cpu";
+
+  private static final long CYCLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  /**
+   * Max CPU time owed to (or ahead of) the target, in cycles
+   */
+  private static final int MAX_CORRECTION_CYCLES = 5;
+
+  /**
+   * Smoothing of achieved utilization, about one second of cycles
+   */
+  private static final double ACHIEVED_SMOOTHING = 0.01;
+
+  private static final int SPIN_ITERATIONS = 1000;
+
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+  private final UtilizationProfile profile;
+
+  private final boolean cpuTimeMeasured;
+
+  private volatile double targetLevel;
+
+  /**
+   * Smoothed achieved utilization per worker (double bits)
+   */
+  private final AtomicLongArray achievedLevels;
+
+  /**
+   * CPU time used per worker since start
+   */
+  private final AtomicLongArray cpuNanos;
+
+  public CpuLoadScenario(int cpu, int durationSecond, UtilizationProfile profile) {
+    super(TYPE, cpu, cpu, 0, durationSecond);
+    this.profile = profile;
+    this.targetLevel = profile.level(0);
+    this.achievedLevels = new AtomicLongArray(cpu);
+    this.cpuNanos = new AtomicLongArray(cpu);
+    this.cpuTimeMeasured = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported();
+
+    if (cpuTimeMeasured && !THREAD_MX_BEAN.isThreadCpuTimeEnabled()) {
+      THREAD_MX_BEAN.setThreadCpuTimeEnabled(true);
+    }
+  }
+
+  @Override
+  protected void work(int worker) {
+    double result = 0;
+    var start = System.nanoTime();
+    var lastCpu = cpuTimeMeasured ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0;
+    // CPU time owed by the target so far, and used so far
+    double targetCpu = 0;
+    long usedCpu = 0;
+    double achieved = 0;
+    var lastCycleStart = start;
+
+    log.info("Start load cpu {} worker {} ({})", getId(), worker, profile);
+
+    while (isActive()) {
+      var cycleStart = System.nanoTime();
+      var level = profile.level(cycleStart - start);
+
+      if (worker == 0) {
+        targetLevel = level;
+      }
+
+      // owed per wall time, cycles run a bit longer than planned
+      targetCpu += level * (cycleStart - lastCycleStart);
+      lastCycleStart = cycleStart;
+      // anti-windup : lost time is made up within a few cycles, not forever
+      targetCpu = Math.min(targetCpu, usedCpu + MAX_CORRECTION_CYCLES * CYCLE_NANOS);
+      targetCpu = Math.max(targetCpu, usedCpu - MAX_CORRECTION_CYCLES * CYCLE_NANOS);
+
+      var busyNanos = (long) Math.min(CYCLE_NANOS, Math.max(0, targetCpu - usedCpu));
+      var busyStart = System.nanoTime();
+
+      while (System.nanoTime() - busyStart < busyNanos) {
+        for (int i = 0; i < SPIN_ITERATIONS; i++) {
+          var x = RandomUtils.nextDouble();
+          result += Math.atan(x) * Math.tan(x);
+        }
+      }
+
+      var busyWallNanos = System.nanoTime() - busyStart;
+      var sleepNanos = CYCLE_NANOS - (System.nanoTime() - cycleStart);
+
+      if (sleepNanos > 0 && !pause(sleepNanos, TimeUnit.NANOSECONDS)) {
+        break;
+      }
+
+      // without thread CPU time, busy wall time is the best estimate
+      var cpu = cpuTimeMeasured ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : lastCpu + busyWallNanos;
+      var cycleCpu = cpu - lastCpu;
+      var cycleNanos = System.nanoTime() - cycleStart;
+
+      lastCpu = cpu;
+
+      usedCpu += cycleCpu;
+      cpuNanos.set(worker, usedCpu);
+      achieved += ACHIEVED_SMOOTHING * (Math.min(1, (double) cycleCpu / cycleNanos) - achieved);
+      achievedLevels.set(worker, Double.doubleToLongBits(achieved));
+    }
+
+    log.info("Done load cpu {} worker {} : {}", getId(), worker, result);
+  }
+
+  @Override
+  public Map<String, Object> stats() {
+    double achieved = 0;
+    long usedCpu = 0;
+
+    for (int i = 0; i < getThreads(); i++) {
+      achieved += Double.longBitsToDouble(achievedLevels.get(i));
+      usedCpu += cpuNanos.get(i);
+    }
+
+    var elapsedNanos = Duration
+        .between(getStartedAt(), getFinishedAt() != null ? getFinishedAt() : Instant.now()).toNanos();
+
+    return Map.of("profile", profile.toString(), "cpuTimeMeasured", cpuTimeMeasured, "targetUtilization",
+        percent(targetLevel), "achievedUtilization", percent(achieved / getThreads()), "achievedCores",
+        Math.round(achieved * 100) / 100.0, "averageUtilization",
+        elapsedNanos > 0 ? percent((double) usedCpu / elapsedNanos / getThreads()) : 0.0);
+  }
+
+  private static double percent(double level) {
+    return Math.round(level * 1000) / 10.0;
+  }
+
+}
@@ -0,0 +1,432 @@
+package com.course.devops.blue.load;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.http.HttpStatus;
+
+import com.course.devops.blue.exception.LoadScenarioException;
+import com.sun.nio.file.ExtendedOpenOption;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads and / or writes a scratch file for the period, one worker per
+ * outstanding operation (queue depth), each doing positional
+ * {@link FileChannel} reads or writes of one block.
+ * <p>
+ * Files to be read are written in full first (<code>prepare</code> phase), so
+ * reads hit the disk instead of holes. Direct I/O
+ * ({@link ExtendedOpenOption#DIRECT}, page cache bypass) is used when asked
+ * and supported by the file system, buffered I/O otherwise. The scratch file
+ * is removed when the scenario ends, and scratch files left by a killed
+ * process are removed at startup ({@link #deleteScratchFiles(Path)}).
+ * <p>
+ * Cancelling interrupts workers, which closes the shared channel for all of
+ * them (interruptible channel): this ends the run as cancelled, not failed.
+ * <p>
+ * Latency percentiles are kept over about the last minute, so they follow the
+ * current load.
+ */
+@Slf4j
+public class DiskLoadScenario extends LoadScenario {
+
+  public static final String TYPE = "disk";
+
+  public enum Operation {
+    READ, WRITE, MIXED
+  }
+
+  public enum Pattern {
+    SEQUENTIAL, RANDOM
+  }
+
+  private static final String SCRATCH_FILE_PREFIX = ".load-disk-";
+
+  private static final String SCRATCH_FILE_SUFFIX = ".tmp";
+
+  private static final int ONE_MEGABYTE = 1048576;
+
+  private static final int PREPARE_BLOCK_BYTES = ONE_MEGABYTE;
+
+  /**
+   * Max backlog of a throughput target, made up after a stall
+   */
+  private static final long MAX_RATE_BACKLOG_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final Operation operation;
+
+  private final Pattern pattern;
+
+  private final int blockBytes;
+
+  private final long fileBytes;
+
+  private final int fsyncEvery;
+
+  private final boolean directRequested;
+
+  private final long nanosPerOperation;
+
+  private final Path file;
+
+  private volatile FileChannel channel;
+
+  private volatile int alignment = 1;
+
+  private volatile boolean directIo;
+
+  private volatile String phase = "prepare";
+
+  private final CountDownLatch prepared = new CountDownLatch(1);
+
+  /**
+   * Set once prepare succeeded, waiting workers give up otherwise (failed or
+   * cancelled prepare)
+   */
+  private volatile boolean ready;
+
+  private final AtomicLong sequentialPosition = new AtomicLong();
+
+  private final AtomicLong nextOperationNanos = new AtomicLong();
+
+  private final AtomicLong writes = new AtomicLong();
+
+  private final LongAdder operations = new LongAdder();
+
+  private final LongAdder bytes = new LongAdder();
+
+  private final LongAdder fsyncs = new LongAdder();
+
+  private final Timer latency = Timer.builder("devops.blue.load.disk.latency")
+      .publishPercentiles(0.5, 0.9, 0.99, 0.999).distributionStatisticExpiry(Duration.ofMinutes(1))
+      .register(new SimpleMeterRegistry());
+
+  private volatile long runStartNanos;
+
+  private volatile long runEndNanos;
+
+  private long windowStartNanos;
+
+  private long windowOperations;
+
+  private long windowBytes;
+
+  private double recentIops;
+
+  private double recentBytesPerSecond;
+
+  /**
+   * @param operation        read, write or both (half each)
+   * @param pattern          sequential or random block positions
+   * @param blockKb          block size of each operation (KB)
+   * @param queueDepth       concurrent operations
+   * @param fileMb           scratch file size (MB)
+   * @param fsyncEvery       force to disk every n writes, 0 never
+   * @param direct           bypass page cache, when supported
+   * @param rateMbPerSecond  target throughput, 0 unlimited
+   * @param durationSecond   period
+   * @param folder           folder of the scratch file (volume to load)
+   */
+  public DiskLoadScenario(Operation operation, Pattern pattern, int blockKb, int queueDepth, int fileMb,
+      int fsyncEvery, boolean direct, int rateMbPerSecond, int durationSecond, Path folder) {
+    super(TYPE, queueDepth, 0, (int) Math.ceil((double) blockKb * queueDepth / 1024), durationSecond);
+    this.operation = operation;
+    this.pattern = pattern;
+    this.blockBytes = blockKb * 1024;
+    this.fileBytes = (long) fileMb * ONE_MEGABYTE / blockBytes * blockBytes;
+    this.fsyncEvery = fsyncEvery;
+    this.directRequested = direct;
+    this.nanosPerOperation = rateMbPerSecond > 0
+        ? (long) ((double) blockBytes / ((long) rateMbPerSecond * ONE_MEGABYTE) * TimeUnit.SECONDS.toNanos(1))
+        : 0;
+    this.file = folder.resolve(SCRATCH_FILE_PREFIX + getId() + SCRATCH_FILE_SUFFIX);
+
+    if (fileBytes < blockBytes) {
+      throw new LoadScenarioException(HttpStatus.BAD_REQUEST, "Scratch file is smaller than one block");
+    }
+
+    try {
+      Files.createDirectories(folder);
+
+      var store = Files.getFileStore(folder);
+
+      if (store.getUsableSpace() < fileBytes) {
+        throw new LoadScenarioException(HttpStatus.INSUFFICIENT_STORAGE,
+            "Not enough disk space for " + fileMb + " MB scratch file in " + folder);
+      }
+
+      if (direct && blockBytes % store.getBlockSize() != 0) {
+        throw new LoadScenarioException(HttpStatus.BAD_REQUEST,
+            "Block size must be a multiple of " + store.getBlockSize() + " bytes for direct I/O");
+      }
+    } catch (UnsupportedOperationException e) {
+      throw new LoadScenarioException(HttpStatus.BAD_REQUEST,
+          "Direct I/O not supported in folder " + folder + ", block size unknown");
+    } catch (IOException e) {
+      throw new LoadScenarioException(HttpStatus.INTERNAL_SERVER_ERROR,
+          "Cannot use folder " + folder + " : " + e.getMessage());
+    }
+  }
+
+  /**
+   * Remove scratch files left by scenarios of a previous run (e.g. pod killed).
+   *
+   * @param folder folder of scratch files
+   */
+  public static void deleteScratchFiles(Path folder) {
+    if (!Files.isDirectory(folder)) {
+      return;
+    }
+
+    try (var files = Files.newDirectoryStream(folder, SCRATCH_FILE_PREFIX + "*" + SCRATCH_FILE_SUFFIX)) {
+      for (var scratch : files) {
+        Files.deleteIfExists(scratch);
+        log.info("Removed disk load scratch file {}", scratch);
+      }
+    } catch (IOException e) {
+      log.warn("Cannot remove disk load scratch files in {} : {}", folder, e.getMessage());
+    }
+  }
+
+  @Override
+  protected void work(int worker) throws IOException, InterruptedException {
+    try {
+      run(worker);
+    } catch (ClosedChannelException e) {
+      // closed by the interrupt of a cancelled worker (this one or another)
+      if (isActive()) {
+        throw e;
+      }
+    }
+  }
+
+  private void run(int worker) throws IOException, InterruptedException {
+    if (worker == 0) {
+      try {
+        prepare();
+      } finally {
+        prepared.countDown();
+      }
+    } else {
+      prepared.await();
+    }
+
+    if (!ready) {
+      // worker 0 reports the failure, if any
+      return;
+    }
+
+    var buffer = ByteBuffer.allocateDirect(blockBytes + alignment).alignedSlice(alignment).limit(blockBytes);
+    var random = ThreadLocalRandom.current();
+    var content = new byte[blockBytes];
+
+    random.nextBytes(content);
+
+    while (isActive() && throttle()) {
+      var write = operation == Operation.WRITE || (operation == Operation.MIXED && random.nextBoolean());
+      var position = position(random);
+      var start = System.nanoTime();
+
+      // aligned slice may be larger than one block
+      buffer.clear().limit(blockBytes);
+
+      if (write) {
+        buffer.put(content).flip();
+        write(buffer, position);
+      } else {
+        read(buffer, position);
+      }
+
+      latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      operations.increment();
+      bytes.add(blockBytes);
+    }
+  }
+
+  /**
+   * Open (and fill, for reads) the scratch file.
+   */
+  private void prepare() throws IOException {
+    var options = new ArrayList<OpenOption>(
+        List.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+
+    if (directRequested) {
+      try {
+        var directOptions = new ArrayList<>(options);
+        directOptions.add(ExtendedOpenOption.DIRECT);
+        alignment = (int) Files.getFileStore(file.getParent()).getBlockSize();
+        channel = FileChannel.open(file, directOptions.toArray(OpenOption[]::new));
+        directIo = true;
+      } catch (IOException | UnsupportedOperationException e) {
+        log.warn("Direct I/O not available for {}, using buffered I/O : {}", file, e.getMessage());
+        Files.deleteIfExists(file);
+        alignment = 1;
+      }
+    }
+
+    if (channel == null) {
+      channel = FileChannel.open(file, options.toArray(OpenOption[]::new));
+    }
+
+    log.info("Start load disk {} ({} {}, {} bytes blocks, direct I/O {}) on {}", getId(), pattern, operation,
+        blockBytes, directIo, file);
+
+    if (operation != Operation.WRITE) {
+      fill();
+    }
+
+    phase = "run";
+    runStartNanos = System.nanoTime();
+    nextOperationNanos.set(runStartNanos);
+    ready = true;
+  }
+
+  private void fill() throws IOException {
+    var size = Math.max(PREPARE_BLOCK_BYTES / blockBytes, 1) * blockBytes;
+    var buffer = ByteBuffer.allocateDirect(size + alignment).alignedSlice(alignment).limit(size);
+    var content = new byte[size];
+
+    ThreadLocalRandom.current().nextBytes(content);
+
+    for (long position = 0; position < fileBytes && isActive(); position += size) {
+      buffer.clear().put(content).flip().limit((int) Math.min(size, fileBytes - position));
+
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, position + buffer.position());
+      }
+    }
+
+    channel.force(false);
+  }
+
+  /**
+   * Wait for the next operation slot of the throughput target.
+   *
+   * @return whether still active
+   */
+  private boolean throttle() {
+    if (nanosPerOperation == 0) {
+      return true;
+    }
+
+    var now = System.nanoTime();
+    var slot = nextOperationNanos.getAndUpdate(
+        next -> Math.max(next, now - MAX_RATE_BACKLOG_NANOS) + nanosPerOperation);
+    var wait = Math.max(slot, now - MAX_RATE_BACKLOG_NANOS) - now;
+
+    return wait <= 0 || pause(wait, TimeUnit.NANOSECONDS);
+  }
+
+  private long position(ThreadLocalRandom random) {
+    var blocks = fileBytes / blockBytes;
+
+    if (pattern == Pattern.RANDOM) {
+      return random.nextLong(blocks) * blockBytes;
+    }
+
+    return sequentialPosition.getAndAdd(blockBytes) / blockBytes % blocks * blockBytes;
+  }
+
+  private void write(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + buffer.position());
+    }
+
+    if (fsyncEvery > 0 && writes.incrementAndGet() % fsyncEvery == 0) {
+      channel.force(false);
+      fsyncs.increment();
+    }
+  }
+
+  private void read(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+      // until block is full
+    }
+  }
+
+  @Override
+  protected void cleanup() throws IOException {
+    runEndNanos = System.nanoTime();
+
+    try {
+      if (channel != null) {
+        channel.close();
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+
+    log.info("Done load disk {}", getId());
+  }
+
+  @Override
+  public synchronized Map<String, Object> stats() {
+    var now = System.nanoTime();
+    var totalOperations = operations.sum();
+    var totalBytes = bytes.sum();
+
+    // recent rates, over about the last second
+    if (now - windowStartNanos >= RATE_WINDOW_NANOS) {
+      var seconds = (now - windowStartNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+
+      recentIops = windowStartNanos > 0 ? (totalOperations - windowOperations) / seconds : 0;
+      recentBytesPerSecond = windowStartNanos > 0 ? (totalBytes - windowBytes) / seconds : 0;
+      windowStartNanos = now;
+      windowOperations = totalOperations;
+      windowBytes = totalBytes;
+    }
+
+    var runNanos = runStartNanos > 0 ? (runEndNanos > 0 ? runEndNanos : now) - runStartNanos : 0;
+    var runSeconds = runNanos / (double) TimeUnit.SECONDS.toNanos(1);
+    var latencyMillis = new LinkedHashMap<String, Object>();
+
+    for (var percentile : latency.takeSnapshot().percentileValues()) {
+      latencyMillis.put("p" + BigDecimal.valueOf(percentile.percentile() * 100).stripTrailingZeros().toPlainString(),
+          round(percentile.value(TimeUnit.MILLISECONDS)));
+    }
+
+    latencyMillis.put("max", round(latency.max(TimeUnit.MILLISECONDS)));
+
+    var stats = new LinkedHashMap<String, Object>();
+    stats.put("operation", operation.name().toLowerCase());
+    stats.put("pattern", pattern.name().toLowerCase());
+    stats.put("phase", phase);
+    stats.put("directIo", directIo);
+    stats.put("operations", totalOperations);
+    stats.put("fsyncs", fsyncs.sum());
+    stats.put("iops", round(recentIops));
+    stats.put("mbPerSecond", round(recentBytesPerSecond / ONE_MEGABYTE));
+    stats.put("averageIops", runSeconds > 0 ? round(totalOperations / runSeconds) : 0.0);
+    stats.put("averageMbPerSecond", runSeconds > 0 ? round(totalBytes / runSeconds / ONE_MEGABYTE) : 0.0);
+    stats.put("latencyMillis", latencyMillis);
+
+    return stats;
+  }
+
+  private static double round(double value) {
+    return Math.round(value * 1000) / 1000.0;
+  }
+
+}
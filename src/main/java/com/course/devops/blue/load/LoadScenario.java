@@ -0,0 +1,230 @@
+package com.course.devops.blue.load;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Getter;
+
+/**
+ * One load run, started by {@link LoadScenarioEngine}: a number of workers run
+ * {@link #work(int)} on the engine's shared pool until the period ends or the
+ * scenario is cancelled. Workers must check {@link #isActive()} often (and
+ * sleep with {@link #pause(long, TimeUnit)}), so a cancelled scenario stops
+ * promptly.
+ * <p>
+ * Cores and memory declared by a scenario are reserved from the engine budget
+ * until its last worker returns.
+ */
+public abstract class LoadScenario {
+
+  public enum State {
+    RUNNING, DONE, CANCELLED, FAILED
+  }
+
+  @Getter
+  private final String id = UUID.randomUUID().toString();
+
+  @Getter
+  private final String type;
+
+  /**
+   * Workers on the shared pool
+   */
+  @Getter
+  private final int threads;
+
+  /**
+   * CPU cores reserved from the budget
+   */
+  @Getter
+  private final int cores;
+
+  /**
+   * Memory reserved from the budget (MB)
+   */
+  @Getter
+  private final int memoryMb;
+
+  @Getter
+  private final int durationSecond;
+
+  @Getter
+  private volatile State state = State.RUNNING;
+
+  @Getter
+  private volatile Instant startedAt;
+
+  @Getter
+  private volatile Instant finishedAt;
+
+  @Getter
+  private volatile String failure;
+
+  @Getter
+  private volatile boolean cancelled;
+
+  private long deadlineNanos;
+
+  /**
+   * Threads currently running a worker, interrupted on cancel
+   */
+  private final Set<Thread> workerThreads = new HashSet<>();
+
+  private final AtomicInteger runningWorkers = new AtomicInteger();
+
+  private final CountDownLatch finished = new CountDownLatch(1);
+
+  protected LoadScenario(String type, int threads, int cores, int memoryMb, int durationSecond) {
+    this.type = type;
+    this.threads = threads;
+    this.cores = cores;
+    this.memoryMb = memoryMb;
+    this.durationSecond = durationSecond;
+  }
+
+  /**
+   * Body of one worker, returns once the scenario is no longer active.
+   *
+   * @param worker worker index, 0 to <code>threads - 1</code>
+   */
+  protected abstract void work(int worker) throws Exception;
+
+  /**
+   * Release scenario resources, once all workers returned (also after a failure
+   * or cancel).
+   */
+  protected void cleanup() throws Exception {
+    // nothing by default
+  }
+
+  /**
+   * Live, type specific statistics of the scenario.
+   *
+   * @return statistics by name, empty by default
+   */
+  public Map<String, Object> stats() {
+    return Map.of();
+  }
+
+  /**
+   * @return whether workers should keep running (period not over, not
+   *         cancelled)
+   */
+  protected boolean isActive() {
+    return !cancelled && System.nanoTime() - deadlineNanos < 0;
+  }
+
+  /**
+   * @return nanoseconds left in the period, 0 when over
+   */
+  protected long remainingNanos() {
+    return Math.max(0, deadlineNanos - System.nanoTime());
+  }
+
+  /**
+   * Sleep, cut short by the end of the period or cancellation.
+   *
+   * @param duration sleep time
+   * @param unit     unit of duration
+   * @return whether the scenario is still active afterwards
+   */
+  protected boolean pause(long duration, TimeUnit unit) {
+    try {
+      TimeUnit.NANOSECONDS.sleep(Math.min(unit.toNanos(duration), remainingNanos()));
+    } catch (InterruptedException e) {
+      // interrupted by cancel
+      return false;
+    }
+
+    return isActive();
+  }
+
+  void start() {
+    this.startedAt = Instant.now();
+    this.deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSecond);
+    this.runningWorkers.set(threads);
+  }
+
+  /**
+   * Run one worker on the current (pool) thread.
+   *
+   * @return whether this was the last running worker
+   */
+  boolean runWorker(int worker) {
+    synchronized (this) {
+      workerThreads.add(Thread.currentThread());
+    }
+
+    try {
+      if (!cancelled) {
+        work(worker);
+      }
+    } catch (InterruptedException e) {
+      // interrupted by cancel
+    } catch (Exception | Error e) {
+      fail(e);
+    } finally {
+      synchronized (this) {
+        workerThreads.remove(Thread.currentThread());
+        // pool thread is reused, clear an interrupt not consumed by the worker
+        Thread.interrupted();
+      }
+    }
+
+    return workersDone(1);
+  }
+
+  /**
+   * Account for workers that could not be submitted to the pool, as failed.
+   *
+   * @param count workers not submitted
+   * @param cause submission failure
+   * @return whether no worker is left running
+   */
+  boolean abortWorkers(int count, Throwable cause) {
+    fail(cause);
+
+    return workersDone(count);
+  }
+
+  /**
+   * Stop workers, interrupting sleeping ones.
+   */
+  synchronized void cancel() {
+    this.cancelled = true;
+    workerThreads.forEach(Thread::interrupt);
+  }
+
+  private void fail(Throwable e) {
+    this.failure = e.getClass().getSimpleName() + " : " + e.getMessage();
+  }
+
+  private boolean workersDone(int count) {
+    if (runningWorkers.addAndGet(-count) > 0) {
+      return false;
+    }
+
+    try {
+      cleanup();
+    } catch (Exception e) {
+      fail(e);
+    }
+
+    this.state = failure != null ? State.FAILED : cancelled ? State.CANCELLED : State.DONE;
+    this.finishedAt = Instant.now();
+    finished.countDown();
+
+    return true;
+  }
+
+  boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+    return finished.await(timeout, unit);
+  }
+
+}
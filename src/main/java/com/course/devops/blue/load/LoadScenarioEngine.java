@@ -0,0 +1,251 @@
+package com.course.devops.blue.load;
+
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.course.devops.blue.api.response.LoadScenarioResponse;
+import com.course.devops.blue.exception.LoadScenarioException;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs load scenarios on one bounded, shared worker pool. A scenario is only
+ * started when its workers, cores and memory fit in what is left of the
+ * budget, so concurrent drills cannot add up to a runaway load. Scenarios can
+ * be listed, queried and cancelled by id; finished ones are kept for a while
+ * for their final status.
+ * <p>
+ * Exported as <code>devops.blue.load.scenarios</code> (running scenarios),
+ * <code>devops.blue.load.reserved.cores</code> and
+ * <code>devops.blue.load.reserved.memory</code>.
+ */
+@Component
+@Slf4j
+public class LoadScenarioEngine {
+
+  private static final long CANCEL_WAIT_MILLIS = 2000;
+
+  private static final long SHUTDOWN_WAIT_MILLIS = 5000;
+
+  private final ThreadPoolExecutor pool;
+
+  private final int maxThreads;
+
+  private final int maxCores;
+
+  private final int maxMemoryMb;
+
+  private final int maxDurationSecond;
+
+  private final int history;
+
+  private final Map<String, LoadScenario> scenarios = new ConcurrentHashMap<>();
+
+  /**
+   * Finished scenario ids, oldest first
+   */
+  private final ConcurrentLinkedQueue<String> finishedIds = new ConcurrentLinkedQueue<>();
+
+  private int reservedThreads;
+
+  private int reservedCores;
+
+  private int reservedMemoryMb;
+
+  public LoadScenarioEngine(@Value("${devops.blue.load.threads:16}") int maxThreads,
+      @Value("${devops.blue.load.max-cores:0}") int maxCores,
+      @Value("${devops.blue.load.max-memory-mb:512}") int maxMemoryMb,
+      @Value("${devops.blue.load.max-duration-second:3600}") int maxDurationSecond,
+      @Value("${devops.blue.load.history:50}") int history,
+      @Value("${devops.blue.load.disk-folder:upload}") String diskFolder, MeterRegistry meterRegistry) {
+    this.maxThreads = maxThreads;
+    this.maxCores = maxCores > 0 ? maxCores : Runtime.getRuntime().availableProcessors();
+    this.maxMemoryMb = maxMemoryMb;
+    this.maxDurationSecond = maxDurationSecond;
+    this.history = history;
+    // never more workers than reserved threads, the queue only covers a thread
+    // not yet back in the pool
+    this.pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(maxThreads), new CustomizableThreadFactory("load-"),
+        new ThreadPoolExecutor.AbortPolicy());
+    this.pool.allowCoreThreadTimeOut(true);
+
+    DiskLoadScenario.deleteScratchFiles(Paths.get(diskFolder));
+
+    Gauge.builder("devops.blue.load.scenarios", scenarios,
+        s -> s.values().stream().filter(l -> l.getState() == LoadScenario.State.RUNNING).count())
+        .description("Running load scenarios").register(meterRegistry);
+    Gauge.builder("devops.blue.load.reserved.cores", this, e -> e.reservedCores)
+        .description("CPU cores reserved by running load scenarios").register(meterRegistry);
+    Gauge.builder("devops.blue.load.reserved.memory", this, e -> e.reservedMemoryMb).baseUnit("megabytes")
+        .description("Memory reserved by running load scenarios").register(meterRegistry);
+  }
+
+  /**
+   * Reserve budget and start the scenario workers.
+   *
+   * @param scenario new scenario
+   * @return status of started scenario
+   */
+  public LoadScenarioResponse start(LoadScenario scenario) {
+    if (scenario.getDurationSecond() > maxDurationSecond) {
+      throw new LoadScenarioException(HttpStatus.BAD_REQUEST,
+          "Period " + scenario.getDurationSecond() + " second is above max " + maxDurationSecond + " second");
+    }
+
+    reserve(scenario);
+    // started (startedAt set) before it is visible to list / status
+    scenario.start();
+    scenarios.put(scenario.getId(), scenario);
+
+    log.info("Start load scenario {} ({}, {} threads, {} cores, {} MB, {} second)", scenario.getId(),
+        scenario.getType(), scenario.getThreads(), scenario.getCores(), scenario.getMemoryMb(),
+        scenario.getDurationSecond());
+
+    for (int i = 0; i < scenario.getThreads(); i++) {
+      var worker = i;
+
+      try {
+        pool.execute(() -> {
+          if (scenario.runWorker(worker)) {
+            finish(scenario);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // pool shutting down : stop workers already submitted, budget is released by the last one
+        scenario.cancel();
+
+        if (scenario.abortWorkers(scenario.getThreads() - worker, e)) {
+          finish(scenario);
+        }
+
+        throw new LoadScenarioException(HttpStatus.SERVICE_UNAVAILABLE,
+            "Load scenario " + scenario.getId() + " workers cannot be started");
+      }
+    }
+
+    return status(scenario);
+  }
+
+  private synchronized void reserve(LoadScenario scenario) {
+    if (reservedThreads + scenario.getThreads() > maxThreads) {
+      throw new LoadScenarioException(HttpStatus.TOO_MANY_REQUESTS, String.format(
+          "Load budget exhausted : %d of %d load threads in use", reservedThreads, maxThreads));
+    }
+
+    if (reservedCores + scenario.getCores() > maxCores) {
+      throw new LoadScenarioException(HttpStatus.TOO_MANY_REQUESTS,
+          String.format("Load budget exhausted : %d of %d cores in use", reservedCores, maxCores));
+    }
+
+    if (reservedMemoryMb + scenario.getMemoryMb() > maxMemoryMb) {
+      throw new LoadScenarioException(HttpStatus.TOO_MANY_REQUESTS,
+          String.format("Load budget exhausted : %d of %d MB in use", reservedMemoryMb, maxMemoryMb));
+    }
+
+    reservedThreads += scenario.getThreads();
+    reservedCores += scenario.getCores();
+    reservedMemoryMb += scenario.getMemoryMb();
+  }
+
+  private synchronized void finish(LoadScenario scenario) {
+    reservedThreads -= scenario.getThreads();
+    reservedCores -= scenario.getCores();
+    reservedMemoryMb -= scenario.getMemoryMb();
+
+    log.info("Load scenario {} {}", scenario.getId(), scenario.getState());
+
+    finishedIds.add(scenario.getId());
+
+    while (finishedIds.size() > history) {
+      scenarios.remove(finishedIds.poll());
+    }
+  }
+
+  /**
+   * @return all known scenarios, latest first
+   */
+  public List<LoadScenarioResponse> list() {
+    return scenarios.values().stream().sorted(Comparator.comparing(LoadScenario::getStartedAt).reversed())
+        .map(this::status).toList();
+  }
+
+  /**
+   * @param id scenario id
+   * @return scenario status
+   */
+  public LoadScenarioResponse status(String id) {
+    return status(get(id));
+  }
+
+  /**
+   * Cancel scenario, and wait (a short while) for its workers to stop.
+   *
+   * @param id scenario id
+   * @return scenario status, still running when workers are slow to stop
+   */
+  public LoadScenarioResponse cancel(String id) {
+    var scenario = get(id);
+
+    scenario.cancel();
+
+    try {
+      scenario.awaitFinished(CANCEL_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    return status(scenario);
+  }
+
+  private LoadScenario get(String id) {
+    var scenario = scenarios.get(id);
+
+    if (scenario == null) {
+      throw new LoadScenarioException(HttpStatus.NOT_FOUND, "Load scenario " + id + " not found");
+    }
+
+    return scenario;
+  }
+
+  private LoadScenarioResponse status(LoadScenario scenario) {
+    var remainingSecond = scenario.getState() == LoadScenario.State.RUNNING
+        ? TimeUnit.NANOSECONDS.toSeconds(scenario.remainingNanos())
+        : 0;
+
+    return LoadScenarioResponse.builder().scenarioId(scenario.getId()).type(scenario.getType())
+        .state(scenario.getState().name()).threads(scenario.getThreads()).cores(scenario.getCores())
+        .memoryMb(scenario.getMemoryMb()).durationSecond(scenario.getDurationSecond())
+        .remainingSecond(remainingSecond).startedAt(scenario.getStartedAt().toString())
+        .finishedAt(scenario.getFinishedAt() != null ? scenario.getFinishedAt().toString() : null)
+        .failure(scenario.getFailure()).stats(scenario.stats()).build();
+  }
+
+  @PreDestroy
+  private void shutdown() throws InterruptedException {
+    scenarios.values().forEach(LoadScenario::cancel);
+    pool.shutdownNow();
+
+    if (!pool.awaitTermination(SHUTDOWN_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+      log.warn("Load workers still running after {} ms", SHUTDOWN_WAIT_MILLIS);
+    }
+  }
+
+}
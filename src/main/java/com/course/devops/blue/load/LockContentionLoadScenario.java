@@ -0,0 +1,185 @@
+package com.course.devops.blue.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <code>threads</code> workers repeatedly enter one of <code>locks</code>
+ * monitors (picked at random), spin inside for the critical section, then
+ * sleep outside for the think time. Fewer locks and longer critical sections
+ * mean more threads blocked on monitor entry. Only monitor holders spin, so
+ * at most one core per lock is reserved.
+ * <p>
+ * Blocked count and time come from {@link ThreadMXBean} (thread contention
+ * monitoring is switched on when supported), wait to acquire is also measured
+ * directly. Critical sections check for cancellation, so workers stop within
+ * one spin step.
+ */
+@Slf4j
+public class LockContentionLoadScenario extends LoadScenario {
+
+  public static final String TYPE = "contention";
+
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+  private final Object[] locks;
+
+  private final long criticalNanos;
+
+  private final long thinkNanos;
+
+  private final boolean contentionMonitored;
+
+  /**
+   * Worker thread ids, and their blocked count / time at start
+   */
+  private final AtomicLongArray threadIds;
+
+  private final AtomicLongArray blockedCountsAtStart;
+
+  private final AtomicLongArray blockedMillisAtStart;
+
+  /**
+   * Blocked count / time of workers already returned
+   */
+  private final LongAdder finishedBlockedCount = new LongAdder();
+
+  private final LongAdder finishedBlockedMillis = new LongAdder();
+
+  private final LongAdder acquisitions = new LongAdder();
+
+  private final LongAdder acquireWaitNanos = new LongAdder();
+
+  private final AtomicLong maxAcquireWaitNanos = new AtomicLong();
+
+  private volatile long runStartNanos;
+
+  private volatile long runEndNanos;
+
+  /**
+   * @param threads                 contending workers
+   * @param locks                   monitors to contend on
+   * @param criticalSectionMicros   time spent holding a monitor
+   * @param thinkMicros             time spent between two critical sections
+   * @param durationSecond          period
+   */
+  public LockContentionLoadScenario(int threads, int locks, int criticalSectionMicros, int thinkMicros,
+      int durationSecond) {
+    // at most one running (spinning) worker per lock, others block or sleep
+    super(TYPE, threads, Math.min(threads, locks), 0, durationSecond);
+    this.locks = new Object[locks];
+    this.criticalNanos = TimeUnit.MICROSECONDS.toNanos(criticalSectionMicros);
+    this.thinkNanos = TimeUnit.MICROSECONDS.toNanos(thinkMicros);
+    this.threadIds = new AtomicLongArray(threads);
+    this.blockedCountsAtStart = new AtomicLongArray(threads);
+    this.blockedMillisAtStart = new AtomicLongArray(threads);
+    this.contentionMonitored = THREAD_MX_BEAN.isThreadContentionMonitoringSupported();
+
+    for (int i = 0; i < locks; i++) {
+      this.locks[i] = new Object();
+    }
+
+    if (contentionMonitored && !THREAD_MX_BEAN.isThreadContentionMonitoringEnabled()) {
+      THREAD_MX_BEAN.setThreadContentionMonitoringEnabled(true);
+    }
+  }
+
+  @Override
+  protected void work(int worker) {
+    var threadId = Thread.currentThread().getId();
+    var random = ThreadLocalRandom.current();
+    var info = THREAD_MX_BEAN.getThreadInfo(threadId);
+
+    threadIds.set(worker, threadId);
+    blockedCountsAtStart.set(worker, info.getBlockedCount());
+    blockedMillisAtStart.set(worker, info.getBlockedTime());
+
+    if (worker == 0) {
+      runStartNanos = System.nanoTime();
+      log.info("Start load contention {} ({} threads, {} locks)", getId(), getThreads(), locks.length);
+    }
+
+    try {
+      while (isActive()) {
+        var lock = locks[random.nextInt(locks.length)];
+        var waitStart = System.nanoTime();
+
+        synchronized (lock) {
+          var wait = System.nanoTime() - waitStart;
+
+          acquireWaitNanos.add(wait);
+          maxAcquireWaitNanos.accumulateAndGet(wait, Math::max);
+          acquisitions.increment();
+          spin(criticalNanos);
+        }
+
+        if (thinkNanos > 0 && !pause(thinkNanos, TimeUnit.NANOSECONDS)) {
+          break;
+        }
+      }
+    } finally {
+      // pool thread goes on with other tasks, keep its totals of this scenario
+      info = THREAD_MX_BEAN.getThreadInfo(threadId);
+      threadIds.set(worker, 0);
+      finishedBlockedCount.add(info.getBlockedCount() - blockedCountsAtStart.get(worker));
+      finishedBlockedMillis.add(info.getBlockedTime() - blockedMillisAtStart.get(worker));
+    }
+  }
+
+  private void spin(long nanos) {
+    var start = System.nanoTime();
+
+    while (System.nanoTime() - start < nanos && isActive()) {
+      Thread.onSpinWait();
+    }
+  }
+
+  @Override
+  protected void cleanup() {
+    runEndNanos = System.nanoTime();
+    log.info("Done load contention {}", getId());
+  }
+
+  @Override
+  public Map<String, Object> stats() {
+    var blockedCount = finishedBlockedCount.sum();
+    var blockedMillis = finishedBlockedMillis.sum();
+
+    for (int i = 0; i < threadIds.length(); i++) {
+      var info = threadIds.get(i) > 0 ? THREAD_MX_BEAN.getThreadInfo(threadIds.get(i)) : null;
+
+      if (info != null) {
+        blockedCount += info.getBlockedCount() - blockedCountsAtStart.get(i);
+        blockedMillis += info.getBlockedTime() - blockedMillisAtStart.get(i);
+      }
+    }
+
+    var total = acquisitions.sum();
+    var runNanos = runStartNanos > 0 ? (runEndNanos > 0 ? runEndNanos : System.nanoTime()) - runStartNanos : 0;
+    var stats = new LinkedHashMap<String, Object>();
+
+    stats.put("locks", locks.length);
+    stats.put("criticalSectionMicros", TimeUnit.NANOSECONDS.toMicros(criticalNanos));
+    stats.put("acquisitions", total);
+    stats.put("acquisitionsPerSecond",
+        runNanos > 0 ? Math.round(total / (runNanos / (double) TimeUnit.SECONDS.toNanos(1))) : 0);
+    stats.put("averageAcquireWaitMicros",
+        total > 0 ? Math.round(acquireWaitNanos.sum() / (double) total / 100) / 10.0 : 0.0);
+    stats.put("maxAcquireWaitMicros", TimeUnit.NANOSECONDS.toMicros(maxAcquireWaitNanos.get()));
+    stats.put("contentionMonitored", contentionMonitored);
+    stats.put("blockedCount", blockedCount);
+    stats.put("blockedTimeMillis", blockedMillis);
+
+    return stats;
+  }
+
+}
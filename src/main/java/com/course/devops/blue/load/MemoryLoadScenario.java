@@ -0,0 +1,282 @@
+package com.course.devops.blue.load;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpStatus;
+
+import com.course.devops.blue.exception.LoadScenarioException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Grows memory usage linearly up to <code>loadMb</code> (1 MB chunks) during
+ * the ramp phase, holds it, then releases it linearly during the release phase
+ * (at once at the end of the period by default).
+ * <ul>
+ * <li><code>heap</code> : <code>byte[]</code> chunks</li>
+ * <li><code>direct</code> : direct {@link ByteBuffer} chunks, native memory
+ * outside the heap</li>
+ * <li><code>mmap</code> : shared mappings of unlinked scratch files (tmpfs
+ * when available), the closest Java gets to anonymous mappings</li>
+ * <li><code>churn</code> : heap chunks as live set, plus short-lived objects
+ * allocated at a target rate, for GC pressure without retained growth</li>
+ * </ul>
+ * Every page of native chunks is written, so resident memory really grows.
+ * Native chunks are freed as soon as released, not when the GC gets to them
+ * (glibc may still keep freed direct memory resident, unless
+ * <code>MALLOC_MMAP_THRESHOLD_</code> is set).
+ */
+@Slf4j
+public class MemoryLoadScenario extends LoadScenario {
+
+  public static final String TYPE = "memory";
+
+  public enum Mode {
+    HEAP, DIRECT, MMAP, CHURN
+  }
+
+  private static final int ONE_MEGABYTE = 1048576;
+
+  private static final int PAGE_SIZE = 4096;
+
+  private static final long TICK_MILLIS = 10;
+
+  private static final int CHURN_OBJECT_BYTES = 8192;
+
+  /**
+   * Churned objects stay reachable for a few allocations only, enough to keep
+   * them from being optimized away
+   */
+  private static final int CHURN_SLOTS = 64;
+
+  /**
+   * Max churn backlog made up after a stall
+   */
+  private static final long MAX_CHURN_BACKLOG_MILLIS = 1000;
+
+  private static final Method INVOKE_CLEANER;
+
+  private static final Object UNSAFE;
+
+  static {
+    Method invokeCleaner = null;
+    Object unsafe = null;
+
+    try {
+      var unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      unsafe = field.get(null);
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      log.warn("Native load memory is freed by GC only : {}", e.getMessage());
+    }
+
+    INVOKE_CLEANER = invokeCleaner;
+    UNSAFE = unsafe;
+  }
+
+  private final Mode mode;
+
+  private final long rampNanos;
+
+  private final long releaseNanos;
+
+  private final int churnMbPerSecond;
+
+  private final Path mmapFolder;
+
+  private volatile int allocatedMb;
+
+  private volatile String phase = "ramp";
+
+  private volatile long churnedBytes;
+
+  private volatile long churnNanos;
+
+  private final long gcCountAtStart = gcCount();
+
+  private final long gcMillisAtStart = gcMillis();
+
+  /**
+   * @param mode             kind of memory to load
+   * @param loadMb           memory held at full load (live set in churn mode)
+   * @param durationSecond   period
+   * @param rampSecond       time to reach full load, <code>null</code> for
+   *                         period minus one second
+   * @param releaseSecond    time to release memory, at the end of the period
+   * @param churnMbPerSecond allocation rate of short-lived objects (churn
+   *                         mode)
+   * @param mmapFolder       folder of mmap scratch files
+   */
+  public MemoryLoadScenario(Mode mode, int loadMb, int durationSecond, Integer rampSecond, int releaseSecond,
+      int churnMbPerSecond, Path mmapFolder) {
+    super(TYPE, 1, mode == Mode.CHURN ? 1 : 0, loadMb, durationSecond);
+    this.mode = mode;
+    this.rampNanos = TimeUnit.SECONDS.toNanos(rampSecond != null ? rampSecond : Math.max(0, durationSecond - 1));
+    this.releaseNanos = TimeUnit.SECONDS.toNanos(releaseSecond);
+    this.churnMbPerSecond = churnMbPerSecond;
+    this.mmapFolder = mmapFolder;
+
+    if (rampNanos + releaseNanos > TimeUnit.SECONDS.toNanos(durationSecond)) {
+      throw new LoadScenarioException(HttpStatus.BAD_REQUEST, "Ramp and release phases are longer than period");
+    }
+
+    if (mode == Mode.CHURN && churnMbPerSecond <= 0) {
+      throw new LoadScenarioException(HttpStatus.BAD_REQUEST, "Churn mode needs an allocation rate");
+    }
+  }
+
+  @Override
+  protected void work(int worker) throws IOException {
+    var chunks = new ArrayList<Object>();
+    var churnSlots = new byte[CHURN_SLOTS][];
+    var periodNanos = TimeUnit.SECONDS.toNanos(getDurationSecond());
+    var start = System.nanoTime();
+
+    log.info("Start load memory {} ({})", getId(), mode);
+
+    try {
+      while (isActive()) {
+        var elapsed = System.nanoTime() - start;
+
+        resize(chunks, targetMb(elapsed, periodNanos));
+
+        if (mode == Mode.CHURN) {
+          churn(churnSlots, elapsed);
+        }
+
+        pause(TICK_MILLIS, TimeUnit.MILLISECONDS);
+      }
+    } finally {
+      resize(chunks, 0);
+    }
+
+    log.info("Done load memory {}", getId());
+  }
+
+  private int targetMb(long elapsed, long periodNanos) {
+    var releaseStart = periodNanos - releaseNanos;
+
+    if (elapsed < rampNanos) {
+      phase = "ramp";
+      return (int) Math.ceil(getMemoryMb() * (double) elapsed / rampNanos);
+    }
+
+    if (elapsed < releaseStart || releaseNanos == 0) {
+      phase = "hold";
+      return getMemoryMb();
+    }
+
+    phase = "release";
+    return (int) (getMemoryMb() * (1 - (double) (elapsed - releaseStart) / releaseNanos));
+  }
+
+  private void resize(List<Object> chunks, int targetMb) throws IOException {
+    while (chunks.size() < targetMb && isActive()) {
+      chunks.add(allocate());
+      allocatedMb = chunks.size();
+    }
+
+    while (chunks.size() > targetMb) {
+      free(chunks.remove(chunks.size() - 1));
+      allocatedMb = chunks.size();
+    }
+  }
+
+  private Object allocate() throws IOException {
+    return switch (mode) {
+    case HEAP, CHURN -> new byte[ONE_MEGABYTE];
+    case DIRECT -> touch(ByteBuffer.allocateDirect(ONE_MEGABYTE));
+    case MMAP -> touch(map());
+    };
+  }
+
+  private ByteBuffer map() throws IOException {
+    var file = Files.createTempFile(mmapFolder, "load-mmap-", ".tmp");
+
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, ONE_MEGABYTE);
+    } finally {
+      // pages live as long as the mapping
+      Files.delete(file);
+    }
+  }
+
+  private static ByteBuffer touch(ByteBuffer buffer) {
+    for (int i = 0; i < buffer.capacity(); i += PAGE_SIZE) {
+      buffer.put(i, (byte) 1);
+    }
+
+    return buffer;
+  }
+
+  private static void free(Object chunk) {
+    if (chunk instanceof ByteBuffer buffer && INVOKE_CLEANER != null) {
+      try {
+        INVOKE_CLEANER.invoke(UNSAFE, buffer);
+      } catch (ReflectiveOperationException e) {
+        // left to GC
+      }
+    }
+  }
+
+  /**
+   * Allocate short-lived objects, catching up with the target rate since the
+   * start of the period.
+   */
+  private void churn(byte[][] churnSlots, long elapsed) {
+    var targetBytes = (long) (churnMbPerSecond * (double) ONE_MEGABYTE * elapsed / TimeUnit.SECONDS.toNanos(1));
+    var minBytes = targetBytes - churnMbPerSecond * (long) ONE_MEGABYTE * MAX_CHURN_BACKLOG_MILLIS / 1000;
+    var churned = Math.max(churnedBytes, minBytes);
+    var slot = 0;
+
+    while (churned < targetBytes) {
+      churnSlots[slot] = new byte[CHURN_OBJECT_BYTES];
+      slot = (slot + 1) % CHURN_SLOTS;
+      churned += CHURN_OBJECT_BYTES;
+    }
+
+    churnedBytes = churned;
+    churnNanos = elapsed;
+  }
+
+  private static long gcCount() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(c -> c > 0).sum();
+  }
+
+  private static long gcMillis() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(t -> t > 0).sum();
+  }
+
+  @Override
+  public Map<String, Object> stats() {
+    if (mode != Mode.CHURN) {
+      return Map.of("mode", mode.name().toLowerCase(), "phase", phase, "allocatedMb", allocatedMb);
+    }
+
+    var seconds = churnNanos / (double) TimeUnit.SECONDS.toNanos(1);
+
+    return Map.of("mode", mode.name().toLowerCase(), "phase", phase, "allocatedMb", allocatedMb, "churnedMb",
+        churnedBytes / ONE_MEGABYTE, "churnMbPerSecond",
+        seconds > 0 ? Math.round(churnedBytes / (double) ONE_MEGABYTE / seconds * 10) / 10.0 : 0.0,
+        "targetChurnMbPerSecond", churnMbPerSecond, "gcCount", gcCount() - gcCountAtStart, "gcTimeMillis",
+        gcMillis() - gcMillisAtStart);
+  }
+
+}
@@ -0,0 +1,139 @@
+package com.course.devops.blue.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ramps the live thread count up by <code>targetThreads</code> plain threads
+ * (outside of the load pool), linearly over the ramp time, and keeps them
+ * until the period ends. Each thread wakes up every <code>wakeMillis</code>,
+ * so the scheduler has work to do. When the JVM cannot create more threads,
+ * the ramp stops there and the failure is reported.
+ * <p>
+ * Threads are interrupted and joined (for a bounded time) when the scenario
+ * ends or is cancelled. Memory is reserved from the budget per thread (stack
+ * and JVM structures, estimated).
+ */
+@Slf4j
+public class ThreadLoadScenario extends LoadScenario {
+
+  public static final String TYPE = "threads";
+
+  private static final int THREAD_MEMORY_KB = 128;
+
+  private static final long TICK_MILLIS = 10;
+
+  private static final long JOIN_MILLIS = 5000;
+
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+  private final int targetThreads;
+
+  private final long rampNanos;
+
+  private final long wakeMillis;
+
+  private final List<Thread> spawned = new ArrayList<>();
+
+  private volatile int liveThreads;
+
+  private volatile String spawnFailure;
+
+  /**
+   * @param targetThreads  threads to add
+   * @param rampSecond     time to reach target, 0 at once
+   * @param wakeMillis     sleep time between two wake ups of a thread
+   * @param durationSecond period
+   */
+  public ThreadLoadScenario(int targetThreads, int rampSecond, int wakeMillis, int durationSecond) {
+    super(TYPE, 1, 0, (int) Math.ceil((double) targetThreads * THREAD_MEMORY_KB / 1024), durationSecond);
+    this.targetThreads = targetThreads;
+    this.rampNanos = TimeUnit.SECONDS.toNanos(rampSecond);
+    this.wakeMillis = wakeMillis;
+  }
+
+  @Override
+  protected void work(int worker) {
+    var start = System.nanoTime();
+
+    log.info("Start load threads {} ({} threads)", getId(), targetThreads);
+
+    while (isActive()) {
+      var elapsed = System.nanoTime() - start;
+      var target = elapsed >= rampNanos ? targetThreads : (int) (targetThreads * (double) elapsed / rampNanos);
+
+      while (spawnFailure == null && spawned.size() < target && isActive()) {
+        spawn();
+      }
+
+      liveThreads = (int) spawned.stream().filter(Thread::isAlive).count();
+      pause(TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void spawn() {
+    var thread = new Thread(this::idle, "load-thread-" + getId().substring(0, 8) + "-" + spawned.size());
+    thread.setDaemon(true);
+
+    try {
+      thread.start();
+      spawned.add(thread);
+    } catch (OutOfMemoryError e) {
+      // unable to create native thread : hold what we have
+      spawnFailure = e.getMessage();
+      log.warn("Load threads {} stopped at {} threads : {}", getId(), spawned.size(), e.getMessage());
+    }
+  }
+
+  private void idle() {
+    while (pause(wakeMillis, TimeUnit.MILLISECONDS)) {
+      // wake up, sleep again
+    }
+  }
+
+  @Override
+  protected void cleanup() throws InterruptedException {
+    spawned.forEach(Thread::interrupt);
+
+    var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(JOIN_MILLIS);
+
+    for (var thread : spawned) {
+      var left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+      if (left <= 0) {
+        break;
+      }
+
+      thread.join(left);
+    }
+
+    liveThreads = (int) spawned.stream().filter(Thread::isAlive).count();
+
+    if (liveThreads > 0) {
+      log.warn("Load threads {} : {} threads still alive after {} ms", getId(), liveThreads, JOIN_MILLIS);
+    }
+
+    log.info("Done load threads {}", getId());
+  }
+
+  @Override
+  public Map<String, Object> stats() {
+    var stats = new LinkedHashMap<String, Object>();
+
+    stats.put("targetThreads", targetThreads);
+    stats.put("spawnedThreads", liveThreads);
+    stats.put("jvmLiveThreads", THREAD_MX_BEAN.getThreadCount());
+    stats.put("jvmPeakThreads", THREAD_MX_BEAN.getPeakThreadCount());
+    stats.put("spawnFailure", spawnFailure);
+
+    return stats;
+  }
+
+}
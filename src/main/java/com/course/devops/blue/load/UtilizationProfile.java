@@ -0,0 +1,103 @@
+package com.course.devops.blue.load;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpStatus;
+
+import com.course.devops.blue.exception.LoadScenarioException;
+
+/**
+ * Target utilization over time, linear between points
+ * (<code>second:percent</code>, e.g. <code>0:35,600:35,660:80</code> holds 35%
+ * for 10 minutes then ramps to 80% in one minute). The first level applies
+ * before the first point, the last one after the last point.
+ */
+public class UtilizationProfile {
+
+  private final long[] pointNanos;
+
+  private final double[] levels;
+
+  private UtilizationProfile(long[] pointNanos, double[] levels) {
+    this.pointNanos = pointNanos;
+    this.levels = levels;
+  }
+
+  /**
+   * @param percent utilization, 1 to 100
+   * @return constant profile
+   */
+  public static UtilizationProfile constant(int percent) {
+    return new UtilizationProfile(new long[] { 0 }, new double[] { percent / 100.0 });
+  }
+
+  /**
+   * @param profile <code>second:percent</code> points, comma separated, in
+   *                increasing time
+   * @return parsed profile
+   */
+  public static UtilizationProfile parse(String profile) {
+    var points = StringUtils.split(profile, ',');
+
+    if (points == null || points.length == 0) {
+      throw new LoadScenarioException(HttpStatus.BAD_REQUEST, "Empty utilization profile");
+    }
+
+    var pointNanos = new long[points.length];
+    var levels = new double[points.length];
+
+    for (int i = 0; i < points.length; i++) {
+      var fields = StringUtils.split(points[i], ':');
+
+      try {
+        pointNanos[i] = TimeUnit.SECONDS.toNanos(Long.parseLong(fields[0].trim()));
+        levels[i] = Integer.parseInt(fields[1].trim()) / 100.0;
+      } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+        throw new LoadScenarioException(HttpStatus.BAD_REQUEST, "Invalid utilization point " + points[i]);
+      }
+
+      if (levels[i] < 0 || levels[i] > 1) {
+        throw new LoadScenarioException(HttpStatus.BAD_REQUEST,
+            "Utilization of point " + points[i] + " must be between 0 and 100");
+      }
+
+      if (i > 0 && pointNanos[i] <= pointNanos[i - 1]) {
+        throw new LoadScenarioException(HttpStatus.BAD_REQUEST,
+            "Utilization points must be in increasing time : " + profile);
+      }
+    }
+
+    return new UtilizationProfile(pointNanos, levels);
+  }
+
+  /**
+   * @param elapsedNanos time since start
+   * @return target utilization, 0 to 1
+   */
+  public double level(long elapsedNanos) {
+    if (elapsedNanos <= pointNanos[0]) {
+      return levels[0];
+    }
+
+    for (int i = 1; i < pointNanos.length; i++) {
+      if (elapsedNanos < pointNanos[i]) {
+        var ratio = (double) (elapsedNanos - pointNanos[i - 1]) / (pointNanos[i] - pointNanos[i - 1]);
+
+        return levels[i - 1] + (levels[i] - levels[i - 1]) * ratio;
+      }
+    }
+
+    return levels[levels.length - 1];
+  }
+
+  @Override
+  public String toString() {
+    return IntStream.range(0, pointNanos.length)
+        .mapToObj(i -> TimeUnit.NANOSECONDS.toSeconds(pointNanos[i]) + ":" + Math.round(levels[i] * 100))
+        .collect(Collectors.joining(","));
+  }
+
+}
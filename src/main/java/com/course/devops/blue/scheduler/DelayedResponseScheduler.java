@@ -0,0 +1,80 @@
+package com.course.devops.blue.scheduler;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Completes delayed responses from a shared timer, so a request waiting for its
+ * delay is parked as a {@link DeferredResult} instead of holding a servlet
+ * thread.
+ */
+@Component
+@Slf4j
+public class DelayedResponseScheduler {
+
+  /**
+   * Extra time given to the async request on top of the delay, so the container
+   * timeout never fires before the timer does.
+   */
+  private static final long ASYNC_TIMEOUT_MARGIN_MILLIS = 5000;
+
+  private final ScheduledThreadPoolExecutor timer;
+
+  private final AtomicInteger parkedRequests = new AtomicInteger();
+
+  public DelayedResponseScheduler(@Value("${devops.blue.delay.timer-threads:2}") int timerThreads,
+      MeterRegistry meterRegistry) {
+    this.timer = new ScheduledThreadPoolExecutor(timerThreads, new CustomizableThreadFactory("delay-timer-"));
+    this.timer.setRemoveOnCancelPolicy(true);
+
+    Gauge.builder("devops.blue.delay.parked", parkedRequests, AtomicInteger::get)
+        .description("Delayed requests currently parked, waiting for their timer").register(meterRegistry);
+  }
+
+  /**
+   * Park the current request, and complete it with <code>result</code> once the
+   * delay is over.
+   *
+   * @param delay  delay before response is sent
+   * @param unit   unit of <code>delay</code>
+   * @param result supplies the response body, invoked on the timer thread
+   * @return deferred result to be returned from controller
+   */
+  public <T> DeferredResult<T> schedule(long delay, TimeUnit unit, Supplier<T> result) {
+    var deferredResult = new DeferredResult<T>(unit.toMillis(delay) + ASYNC_TIMEOUT_MARGIN_MILLIS);
+
+    parkedRequests.incrementAndGet();
+    var task = timer.schedule(() -> deferredResult.setResult(result.get()), delay, unit);
+
+    deferredResult.onCompletion(() -> {
+      parkedRequests.decrementAndGet();
+      task.cancel(false);
+    });
+
+    return deferredResult;
+  }
+
+  public int getParkedRequests() {
+    return parkedRequests.get();
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    log.info("Stopping delay timer, {} request(s) still parked", parkedRequests.get());
+    timer.shutdownNow();
+  }
+
+}
@@ -0,0 +1,87 @@
+package com.course.devops.blue.service.command;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.springframework.core.io.AbstractResource;
+
+/**
+ * Stored file content held in a (direct) {@link ByteBuffer}, e.g. from a cache.
+ * Each accessor works on its own view, so the buffer can be shared by
+ * concurrent downloads.
+ */
+public class ByteBufferResource extends AbstractResource {
+
+  private final String filename;
+
+  private final ByteBuffer content;
+
+  public ByteBufferResource(String filename, ByteBuffer content) {
+    this.filename = filename;
+    this.content = content.asReadOnlyBuffer();
+  }
+
+  /**
+   * Read-only view of bytes <code>[start, end)</code>.
+   *
+   * @param start first byte (inclusive)
+   * @param end   last byte (exclusive)
+   * @return view, sharing content
+   */
+  public ByteBuffer slice(long start, long end) {
+    return content.duplicate().limit((int) end).position((int) start);
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    var view = content.duplicate();
+
+    return new InputStream() {
+
+      @Override
+      public int read() {
+        return view.hasRemaining() ? view.get() & 0xff : -1;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+        if (!view.hasRemaining()) {
+          return -1;
+        }
+
+        var length = Math.min(len, view.remaining());
+        view.get(b, off, length);
+
+        return length;
+      }
+
+      @Override
+      public int available() {
+        return view.remaining();
+      }
+
+    };
+  }
+
+  @Override
+  public boolean exists() {
+    return true;
+  }
+
+  @Override
+  public long contentLength() {
+    return content.capacity();
+  }
+
+  @Override
+  public String getFilename() {
+    return filename;
+  }
+
+  @Override
+  public String getDescription() {
+    return "Byte buffer resource [" + filename + "]";
+  }
+
+}
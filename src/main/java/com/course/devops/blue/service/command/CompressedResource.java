@@ -0,0 +1,114 @@
+package com.course.devops.blue.service.command;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * Stored file kept gzip-compressed. Reading it gives the original content,
+ * decompressed on the fly; {@link #getStored()} gives the stored (compressed)
+ * bytes, to be sent as-is to clients accepting the encoding.
+ */
+public class CompressedResource extends AbstractResource {
+
+  public static final String ENCODING_GZIP = "gzip";
+
+  private final Resource stored;
+
+  private final long contentLength;
+
+  private final LongConsumer inflateNanos;
+
+  /**
+   * @param stored        stored (compressed) file
+   * @param contentLength original (decompressed) size
+   * @param inflateNanos  receives time spent decompressing, once the stream is
+   *                      closed
+   */
+  public CompressedResource(Resource stored, long contentLength, LongConsumer inflateNanos) {
+    this.stored = stored;
+    this.contentLength = contentLength;
+    this.inflateNanos = inflateNanos;
+  }
+
+  public Resource getStored() {
+    return stored;
+  }
+
+  public String getContentEncoding() {
+    return ENCODING_GZIP;
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    return new GZIPInputStream(stored.getInputStream(), 64 * 1024) {
+
+      private long readNanos;
+
+      private long fillNanos;
+
+      private boolean closed;
+
+      @Override
+      public int read(byte[] buf, int off, int len) throws IOException {
+        var start = System.nanoTime();
+
+        try {
+          return super.read(buf, off, len);
+        } finally {
+          readNanos += System.nanoTime() - start;
+        }
+      }
+
+      /**
+       * Time reading compressed bytes is I/O, not decompression
+       */
+      @Override
+      protected void fill() throws IOException {
+        var start = System.nanoTime();
+
+        try {
+          super.fill();
+        } finally {
+          fillNanos += System.nanoTime() - start;
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        super.close();
+
+        if (!closed) {
+          closed = true;
+          inflateNanos.accept(Math.max(0, readNanos - fillNanos));
+        }
+      }
+
+    };
+  }
+
+  @Override
+  public boolean exists() {
+    return stored.exists();
+  }
+
+  @Override
+  public long contentLength() {
+    return contentLength;
+  }
+
+  @Override
+  public String getFilename() {
+    return stored.getFilename();
+  }
+
+  @Override
+  public String getDescription() {
+    return "Compressed resource [" + stored.getDescription() + "]";
+  }
+
+}
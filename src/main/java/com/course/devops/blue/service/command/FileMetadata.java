@@ -0,0 +1,44 @@
+package com.course.devops.blue.service.command;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Metadata of a stored file, recorded once when the file is saved (content
+ * never changes afterwards).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileMetadata {
+
+  /**
+   * Detected content type (MIME)
+   */
+  private String contentType;
+
+  /**
+   * Size in bytes (of the content itself, even if stored compressed)
+   */
+  private long size;
+
+  /**
+   * Creation time, epoch millis
+   */
+  private long createdAt;
+
+  /**
+   * Encoding of stored bytes (e.g. <code>gzip</code>), <code>null</code> if
+   * stored as-is
+   */
+  private String contentEncoding;
+
+  /**
+   * Size in bytes as stored, if <code>contentEncoding</code> is set
+   */
+  private long encodedSize;
+
+}
@@ -1,17 +1,91 @@
 package com.course.devops.blue.service.command;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.springframework.core.io.Resource;
-import org.springframework.web.multipart.MultipartFile;
+
+import com.course.devops.blue.api.response.base.JsonBasePage;
+import com.course.devops.blue.exception.FileStorageException;
 
 public interface FileStorageService {
 
   void init(String root);
 
-  String save(MultipartFile f);
+  /**
+   * Store content under a new file id. Content is streamed to a temporary file
+   * first, then renamed, so a failed upload never leaves a partial file.
+   *
+   * @param content     content to be stored, read until end of stream (not
+   *                    closed)
+   * @param contentType content type, already detected by caller
+   * @return file id
+   * @throws com.course.devops.blue.exception.FileStorageException if content
+   *                                                               cannot be
+   *                                                               stored
+   */
+  String save(InputStream content, String contentType);
+
+  /**
+   * Store an already complete file (e.g. assembled from chunks) under a new
+   * file id. Default copies its content; implementations may move the file
+   * instead.
+   *
+   * @param file        complete file, left in place (or moved) after save
+   * @param contentType content type, already detected by caller
+   * @return file id
+   * @throws com.course.devops.blue.exception.FileStorageException if content
+   *                                                               cannot be
+   *                                                               stored
+   */
+  default String save(Path file, String contentType) {
+    try (var content = Files.newInputStream(file)) {
+      return save(content, contentType);
+    } catch (IOException e) {
+      throw new FileStorageException("Cannot read " + file, e);
+    }
+  }
 
-  List<String> list();
+  /**
+   * Page of stored file ids, in id order.
+   *
+   * @param after last id of previous page (exclusive), <code>null</code> for
+   *              first page
+   * @param limit max ids to return
+   * @return page, with cursor of next page if any
+   */
+  JsonBasePage<String> list(String after, int limit);
 
   Resource load(String filename);
+
+  /**
+   * Metadata recorded at save time. Files stored before metadata was recorded
+   * are detected once, then recorded.
+   *
+   * @param filename file id
+   * @return metadata, <code>null</code> if file does not exist
+   */
+  FileMetadata metadata(String filename);
+
+  /**
+   * Delete stored file.
+   *
+   * @param filename file id
+   * @return <code>true</code> if deleted, <code>false</code> if it does not
+   *         exist
+   * @throws com.course.devops.blue.exception.FileStorageException if file
+   *                                                               cannot be
+   *                                                               deleted
+   */
+  boolean delete(String filename);
+
+  /**
+   * Stop background tasks of the storage (migration, compaction), called when
+   * the application context is closed.
+   */
+  default void close() {
+  }
+
 }
@@ -0,0 +1,144 @@
+package com.course.devops.blue.service.command;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Reads <code>source</code> as gzip (RFC 1952), compressing on the fly, so it
+ * can be handed to a storage that consumes an {@link InputStream} without
+ * spooling the compressed content first.
+ * <p>
+ * Counts bytes read from <code>source</code> and time spent in the deflater
+ * (the CPU cost of compression).
+ */
+public class GzipCompressingInputStream extends InputStream {
+
+  private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+  private static final int TRAILER_BYTES = 8;
+
+  private static final int BUFFER_BYTES = 64 * 1024;
+
+  private final InputStream source;
+
+  private final Deflater deflater;
+
+  private final CRC32 crc = new CRC32();
+
+  private final byte[] input = new byte[BUFFER_BYTES];
+
+  private byte[] pending = HEADER;
+
+  private int pendingPosition;
+
+  private boolean trailerWritten;
+
+  private long uncompressedBytes;
+
+  private long deflateNanos;
+
+  /**
+   * @param source content to compress (not closed by this stream)
+   * @param level  deflate level, 1 (fastest) to 9 (smallest)
+   */
+  public GzipCompressingInputStream(InputStream source, int level) {
+    this.source = source;
+    this.deflater = new Deflater(level, true);
+  }
+
+  @Override
+  public int read() throws IOException {
+    var single = new byte[1];
+
+    return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+
+    while (true) {
+      if (pendingPosition < pending.length) {
+        var length = Math.min(len, pending.length - pendingPosition);
+
+        System.arraycopy(pending, pendingPosition, b, off, length);
+        pendingPosition += length;
+
+        return length;
+      }
+
+      if (!deflater.finished()) {
+        var start = System.nanoTime();
+        var length = deflater.deflate(b, off, len);
+        deflateNanos += System.nanoTime() - start;
+
+        if (length > 0) {
+          return length;
+        }
+
+        if (deflater.needsInput()) {
+          var read = source.read(input);
+
+          if (read == -1) {
+            deflater.finish();
+          } else {
+            crc.update(input, 0, read);
+            deflater.setInput(input, 0, read);
+            uncompressedBytes += read;
+          }
+        }
+        continue;
+      }
+
+      if (trailerWritten) {
+        return -1;
+      }
+
+      pending = trailer();
+      pendingPosition = 0;
+      trailerWritten = true;
+    }
+  }
+
+  private byte[] trailer() {
+    var trailer = new byte[TRAILER_BYTES];
+
+    writeIntLittleEndian(trailer, 0, (int) crc.getValue());
+    writeIntLittleEndian(trailer, 4, (int) uncompressedBytes);
+
+    return trailer;
+  }
+
+  private static void writeIntLittleEndian(byte[] target, int offset, int value) {
+    for (int i = 0; i < 4; i++) {
+      target[offset + i] = (byte) (value >>> (8 * i));
+    }
+  }
+
+  /**
+   * Release deflater, <code>source</code> is left open.
+   */
+  @Override
+  public void close() {
+    deflater.end();
+  }
+
+  /**
+   * @return bytes read (and compressed) from source so far
+   */
+  public long getUncompressedBytes() {
+    return uncompressedBytes;
+  }
+
+  /**
+   * @return nanoseconds spent compressing so far
+   */
+  public long getDeflateNanos() {
+    return deflateNanos;
+  }
+
+}
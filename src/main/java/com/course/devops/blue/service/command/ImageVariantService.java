@@ -0,0 +1,319 @@
+package com.course.devops.blue.service.command;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.course.devops.blue.exception.ImageVariantException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resized / converted variants of stored images, rendered with
+ * <code>javax.imageio</code> and cached on disk
+ * (<code>&lt;folder&gt;/&lt;image id&gt;/&lt;w&gt;x&lt;h&gt;.&lt;fmt&gt;</code>).
+ * Stored images never change, so a cached variant is never stale; variants of
+ * an image are removed with it.
+ * <p>
+ * Concurrent requests for the same variant share one render. Renders run on a
+ * bounded pool, a request arriving when the pool and its queue are full is
+ * rejected instead of queuing up (or rendering on) request threads. Originals
+ * are decoded whole, so dimensions are read from their header first, and
+ * originals above <code>max-source-pixels</code> are rejected.
+ * <p>
+ * Exported as <code>devops.blue.image.variant.requests</code> (tagged
+ * <code>result=cached|rendered|collapsed|rejected</code>) and
+ * <code>devops.blue.image.variant.render</code> (render time).
+ */
+@Service
+@Slf4j
+public class ImageVariantService {
+
+  public static final String FORMAT_JPEG = "jpg";
+
+  private static final String TEMP_FILE_PREFIX = ".render-";
+
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private final FileStorageService imageStorageService;
+
+  private final Path variantFolder;
+
+  private final long maxSourcePixels;
+
+  private final ThreadPoolExecutor pool;
+
+  private final Map<String, CompletableFuture<Path>> renders = new ConcurrentHashMap<>();
+
+  private final Counter cachedCounter;
+
+  private final Counter renderedCounter;
+
+  private final Counter collapsedCounter;
+
+  private final Counter rejectedCounter;
+
+  private final Timer renderTimer;
+
+  public ImageVariantService(@Qualifier("imageStorageService") FileStorageService imageStorageService,
+      @Value("${devops.blue.image-variant.folder:upload/image/.variants}") String variantFolder,
+      @Value("${devops.blue.image-variant.threads:2}") int threads,
+      @Value("${devops.blue.image-variant.queue-capacity:32}") int queueCapacity,
+      @Value("${devops.blue.image-variant.max-source-pixels:25000000}") long maxSourcePixels,
+      MeterRegistry meterRegistry) throws IOException {
+    this.imageStorageService = imageStorageService;
+    this.variantFolder = Paths.get(variantFolder);
+    this.maxSourcePixels = maxSourcePixels;
+    this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("image-variant-"),
+        new ThreadPoolExecutor.AbortPolicy());
+    this.pool.allowCoreThreadTimeOut(true);
+
+    Files.createDirectories(this.variantFolder);
+    // decode from memory / stream, no temporary cache files
+    ImageIO.setUseCache(false);
+
+    this.cachedCounter = requestCounter("cached", meterRegistry);
+    this.renderedCounter = requestCounter("rendered", meterRegistry);
+    this.collapsedCounter = requestCounter("collapsed", meterRegistry);
+    this.rejectedCounter = requestCounter("rejected", meterRegistry);
+    this.renderTimer = Timer.builder("devops.blue.image.variant.render")
+        .description("Time to decode, resize and encode one variant").register(meterRegistry);
+  }
+
+  private static Counter requestCounter(String result, MeterRegistry meterRegistry) {
+    return Counter.builder("devops.blue.image.variant.requests").tag("result", result)
+        .description("Image variant requests").register(meterRegistry);
+  }
+
+  /**
+   * Variant file, from cache or rendered.
+   *
+   * @param imageId  stored image id, must exist
+   * @param width    max width, <code>null</code> to follow height
+   * @param height   max height, <code>null</code> to follow width
+   * @param format   output format (<code>png</code>, <code>jpg</code>,
+   *                 <code>gif</code>)
+   * @return future completed with variant file, or failed with
+   *         {@link ImageVariantException}
+   */
+  public CompletableFuture<Path> variant(String imageId, Integer width, Integer height, String format) {
+    var file = variantFolder.resolve(imageId).resolve(variantName(width, height, format));
+
+    if (Files.exists(file)) {
+      cachedCounter.increment();
+      return CompletableFuture.completedFuture(file);
+    }
+
+    var key = file.toString();
+    var created = new boolean[1];
+    var render = renders.computeIfAbsent(key, k -> {
+      created[0] = true;
+      return submit(imageId, width, height, format, file);
+    });
+
+    if (created[0]) {
+      // once done, next requests find the file (or retry a failed render)
+      render.whenComplete((path, e) -> renders.remove(key, render));
+    } else {
+      collapsedCounter.increment();
+    }
+
+    return render;
+  }
+
+  private CompletableFuture<Path> submit(String imageId, Integer width, Integer height, String format, Path file) {
+    var render = new CompletableFuture<Path>();
+
+    try {
+      pool.execute(() -> {
+        try {
+          render.complete(renderTimer.recordCallable(() -> render(imageId, width, height, format, file)));
+          renderedCounter.increment();
+        } catch (Throwable e) {
+          // always completed, even on error, or collapsed requests would wait on it forever
+          render.completeExceptionally(e instanceof ImageVariantException ? e
+              : new ImageVariantException(HttpStatus.INTERNAL_SERVER_ERROR,
+                  "Cannot render variant of " + imageId + " : " + e.getMessage(), e));
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      rejectedCounter.increment();
+      render.completeExceptionally(new ImageVariantException(HttpStatus.SERVICE_UNAVAILABLE,
+          "Too many image variants being rendered, retry later", e));
+    }
+
+    return render;
+  }
+
+  private Path render(String imageId, Integer width, Integer height, String format, Path file) throws IOException {
+    // rendered by a previous, already completed render
+    if (Files.exists(file)) {
+      return file;
+    }
+
+    var original = imageStorageService.load(imageId);
+
+    if (original == null) {
+      throw new ImageVariantException(HttpStatus.NOT_FOUND, "Image " + imageId + " not found", null);
+    }
+
+    BufferedImage source;
+
+    try (var in = ImageIO.createImageInputStream(original.getInputStream())) {
+      var readers = in != null ? ImageIO.getImageReaders(in) : null;
+
+      if (readers == null || !readers.hasNext()) {
+        throw new ImageVariantException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+            "Image " + imageId + " cannot be decoded for resizing", null);
+      }
+
+      source = decode(imageId, readers.next(), in);
+    } catch (IIOException e) {
+      throw new ImageVariantException(HttpStatus.UNSUPPORTED_MEDIA_TYPE,
+          "Image " + imageId + " cannot be decoded for resizing : " + e.getMessage(), e);
+    }
+
+    var variant = resize(source, width, height, !FORMAT_JPEG.equals(format));
+
+    Files.createDirectories(file.getParent());
+    var tempFile = Files.createTempFile(file.getParent(), TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+
+    try {
+      if (!ImageIO.write(variant, format, tempFile.toFile())) {
+        throw new ImageVariantException(HttpStatus.BAD_REQUEST, "No image writer for format " + format, null);
+      }
+
+      Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+
+    log.info("Rendered variant {} of {} ({}x{} -> {}x{})", file.getFileName(), imageId, source.getWidth(),
+        source.getHeight(), variant.getWidth(), variant.getHeight());
+
+    return file;
+  }
+
+  /**
+   * Decode first image, once its dimensions (from header) are known to fit.
+   */
+  private BufferedImage decode(String imageId, ImageReader reader, Object in) throws IOException {
+    try {
+      reader.setInput(in, true, true);
+
+      var pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+
+      if (pixels > maxSourcePixels) {
+        throw new ImageVariantException(HttpStatus.PAYLOAD_TOO_LARGE, "Image " + imageId + " too large to resize ("
+            + reader.getWidth(0) + "x" + reader.getHeight(0) + ", max " + maxSourcePixels + " pixels)", null);
+      }
+
+      return reader.read(0);
+    } finally {
+      reader.dispose();
+    }
+  }
+
+  /**
+   * Scale to fit within width x height, keeping aspect ratio, never upscaled.
+   * Large reductions are done in halving steps, so bilinear interpolation keeps
+   * the quality of a smooth downscale.
+   */
+  private static BufferedImage resize(BufferedImage source, Integer width, Integer height, boolean alpha) {
+    var scale = 1.0;
+
+    if (width != null) {
+      scale = Math.min(scale, (double) width / source.getWidth());
+    }
+
+    if (height != null) {
+      scale = Math.min(scale, (double) height / source.getHeight());
+    }
+
+    var targetWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+    var targetHeight = Math.max(1, (int) Math.round(source.getHeight() * scale));
+    var type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    var current = source;
+
+    do {
+      var stepWidth = Math.max(targetWidth, current.getWidth() / 2);
+      var stepHeight = Math.max(targetHeight, current.getHeight() / 2);
+      var step = new BufferedImage(stepWidth, stepHeight, type);
+      Graphics2D graphics = step.createGraphics();
+
+      try {
+        if (!alpha) {
+          // no transparency in output, flatten on white
+          graphics.setColor(Color.WHITE);
+          graphics.fillRect(0, 0, stepWidth, stepHeight);
+        }
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(current, 0, 0, stepWidth, stepHeight, null);
+      } finally {
+        graphics.dispose();
+      }
+
+      current = step;
+    } while (current.getWidth() != targetWidth || current.getHeight() != targetHeight);
+
+    return current;
+  }
+
+  /**
+   * Remove cached variants of an image (after the image is deleted).
+   *
+   * @param imageId stored image id
+   */
+  public void evict(String imageId) {
+    var folder = variantFolder.resolve(imageId);
+
+    if (!Files.isDirectory(folder)) {
+      return;
+    }
+
+    try (var files = Files.walk(folder)) {
+      files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+    } catch (IOException e) {
+      log.warn("Cannot remove variants of {} : {}", imageId, e.getMessage());
+    }
+  }
+
+  private static String variantName(Integer width, Integer height, String format) {
+    return (width != null ? width : 0) + "x" + (height != null ? height : 0) + "." + format;
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    pool.shutdownNow();
+  }
+
+}
@@ -0,0 +1,513 @@
+package com.course.devops.blue.service.command;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tika.Tika;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.course.devops.blue.api.response.UploadProgressResponse;
+import com.course.devops.blue.exception.FileStorageException;
+import com.course.devops.blue.exception.UploadSessionException;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resumable upload of large documents: a session is created with the total
+ * size, chunks are written at their offset (in any order, in parallel, again
+ * after a failure), progress can be queried, and the complete file is stored
+ * on commit.
+ * <p>
+ * Each session owns one file, sized to the total at creation, written with
+ * positional {@link FileChannel} writes, so chunks never move data around nor
+ * wait for each other. Content type is detected (Tika) on commit, and the file
+ * is moved into document storage.
+ * <p>
+ * Sessions live in memory: a session idle for longer than the timeout is
+ * removed with its file, and leftover session files are removed at startup.
+ * Session files are sparse, so disk space still to be received by all open
+ * sessions is accounted for when a session is created. A session whose commit
+ * fails on storage stays open, so commit can be retried.
+ */
+@Service
+@Slf4j
+public class ResumableUploadService {
+
+  private static final String SESSION_FILE_SUFFIX = ".part";
+
+  private static final int CHUNK_BUFFER_BYTES = 64 * 1024;
+
+  /**
+   * Prefix used for content type detection, same as single request upload
+   */
+  private static final int SNIFF_BYTES = 64 * 1024;
+
+  private final FileStorageService docStorageService;
+
+  private final Path sessionFolder;
+
+  private final long maxSize;
+
+  private final int maxSessions;
+
+  private final long sessionTimeoutMillis;
+
+  private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+  /**
+   * Bytes not received yet by open sessions (disk space they will still take),
+   * guarded by <code>this</code>
+   */
+  private long outstandingBytes;
+
+  private final ScheduledThreadPoolExecutor expiryTimer;
+
+  private final Tika tika = new Tika();
+
+  public ResumableUploadService(@Qualifier("docStorageService") FileStorageService docStorageService,
+      @Value("${devops.blue.upload.resumable.folder:upload/sessions}") String sessionFolder,
+      @Value("${devops.blue.upload.resumable.max-size:10GB}") DataSize maxSize,
+      @Value("${devops.blue.upload.resumable.max-sessions:100}") int maxSessions,
+      @Value("${devops.blue.upload.resumable.session-timeout:24h}") Duration sessionTimeout,
+      MeterRegistry meterRegistry) throws IOException {
+    this.docStorageService = docStorageService;
+    this.sessionFolder = Paths.get(sessionFolder);
+    this.maxSize = maxSize.toBytes();
+    this.maxSessions = maxSessions;
+    this.sessionTimeoutMillis = sessionTimeout.toMillis();
+
+    Files.createDirectories(this.sessionFolder);
+    deleteSessionFiles();
+
+    this.expiryTimer = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("upload-expiry-"));
+    this.expiryTimer.scheduleWithFixedDelay(this::expireSessions, 1, 1, TimeUnit.MINUTES);
+
+    Gauge.builder("devops.blue.upload.sessions", sessions, Map::size)
+        .description("Resumable upload sessions currently open").register(meterRegistry);
+  }
+
+  /**
+   * Open a session for a file of <code>size</code> bytes.
+   *
+   * @param size total file size
+   * @return progress of the new session (nothing received)
+   * @throws UploadSessionException if size is above the limit, too many
+   *                                sessions are open, or storage is full
+   */
+  public UploadProgressResponse create(long size) {
+    if (size > maxSize) {
+      throw new UploadSessionException(HttpStatus.PAYLOAD_TOO_LARGE,
+          "Size " + size + " above max upload size " + maxSize);
+    }
+
+    if (sessions.size() >= maxSessions) {
+      throw new UploadSessionException(HttpStatus.SERVICE_UNAVAILABLE,
+          "Too many upload sessions, retry after some are committed");
+    }
+
+    var uploadId = UUID.randomUUID().toString();
+    var file = sessionFolder.resolve(uploadId + SESSION_FILE_SUFFIX);
+
+    try {
+      reserve(size);
+    } catch (IOException e) {
+      throw new FileStorageException("Cannot create upload session", e);
+    }
+
+    try {
+      var channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+
+      // final length up front, chunks only overwrite
+      if (size > 0) {
+        channel.write(ByteBuffer.allocate(1), size - 1);
+      }
+
+      var session = new UploadSession(uploadId, size, file, channel);
+      sessions.put(uploadId, session);
+      log.info("Upload session {} created for {} bytes", uploadId, size);
+
+      return session.progress();
+    } catch (IOException e) {
+      release(size);
+      deleteQuietly(file);
+
+      throw new FileStorageException("Cannot create upload session", e);
+    }
+  }
+
+  /**
+   * Reserve disk space of a new session, against space not yet taken by the
+   * sparse files of open sessions.
+   */
+  private synchronized void reserve(long size) throws IOException {
+    var available = Files.getFileStore(sessionFolder).getUsableSpace() - outstandingBytes;
+
+    if (available < size) {
+      throw new UploadSessionException(HttpStatus.INSUFFICIENT_STORAGE,
+          "Not enough disk space for " + size + " bytes, " + Math.max(0, available) + " bytes available");
+    }
+
+    outstandingBytes += size;
+  }
+
+  private synchronized void release(long bytes) {
+    outstandingBytes -= bytes;
+  }
+
+  /**
+   * Drop session from open sessions, and its unreceived bytes from reserved
+   * disk space.
+   */
+  private void remove(UploadSession session) {
+    if (sessions.remove(session.uploadId, session)) {
+      release(session.size - session.receivedBytes());
+    }
+  }
+
+  /**
+   * Write one chunk, read from <code>content</code> until end of stream, at
+   * <code>offset</code>. Bytes written before a failure (e.g. client
+   * disconnect) are kept and reported as received.
+   *
+   * @param uploadId session id
+   * @param offset   position of first byte of chunk in file
+   * @param length   chunk length if known up front (e.g. from
+   *                 <code>Content-Length</code>), -1 otherwise
+   * @param content  chunk content (not closed)
+   * @return progress, after this chunk
+   * @throws IOException            if content cannot be read
+   * @throws UploadSessionException if session does not exist, or chunk does not
+   *                                fit in the file
+   */
+  public UploadProgressResponse write(String uploadId, long offset, long length, InputStream content)
+      throws IOException {
+    var session = session(uploadId);
+
+    if (offset < 0 || offset > session.size || (length > 0 && offset + length > session.size)) {
+      throw new UploadSessionException(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE,
+          "Chunk at offset " + offset + " outside file of " + session.size + " bytes");
+    }
+
+    session.beginWrite();
+    var position = offset;
+
+    try {
+      var buffer = new byte[CHUNK_BUFFER_BYTES];
+      int read;
+
+      while ((read = content.read(buffer)) != -1) {
+        if (position + read > session.size) {
+          throw new UploadSessionException(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE,
+              "Chunk at offset " + offset + " goes beyond file of " + session.size + " bytes");
+        }
+
+        var chunk = ByteBuffer.wrap(buffer, 0, read);
+
+        while (chunk.hasRemaining()) {
+          position += session.channel.write(chunk, position);
+        }
+      }
+    } catch (ClosedChannelException e) {
+      throw new UploadSessionException(HttpStatus.NOT_FOUND, "Upload session " + uploadId + " closed");
+    } finally {
+      release(session.endWrite(offset, position));
+    }
+
+    return session.progress();
+  }
+
+  /**
+   * @param uploadId session id
+   * @return progress
+   * @throws UploadSessionException if session does not exist
+   */
+  public UploadProgressResponse progress(String uploadId) {
+    var session = session(uploadId);
+
+    session.lastAccess = System.currentTimeMillis();
+
+    return session.progress();
+  }
+
+  /**
+   * Store the complete file as a new document, and close the session. If the
+   * file cannot be read or stored, the session is reopened, so commit can be
+   * retried without uploading again.
+   *
+   * @param uploadId session id
+   * @return stored document id
+   * @throws UploadSessionException if session does not exist, is incomplete,
+   *                                still receiving chunks or being committed,
+   *                                or content is an image
+   */
+  public String commit(String uploadId) {
+    var session = session(uploadId);
+
+    session.close();
+
+    String contentType;
+    String docId;
+
+    try {
+      try (var content = Files.newInputStream(session.file)) {
+        contentType = tika.detect(content.readNBytes(SNIFF_BYTES));
+      }
+
+      if (StringUtils.startsWithIgnoreCase(contentType, "image")) {
+        remove(session);
+        deleteQuietly(session.file);
+
+        throw new UploadSessionException(HttpStatus.BAD_REQUEST, "Use endpoint /image to upload image");
+      }
+
+      docId = docStorageService.save(session.file, contentType);
+    } catch (IOException | FileStorageException e) {
+      reopen(session);
+
+      throw e instanceof FileStorageException fse ? fse
+          : new FileStorageException("Cannot read upload session " + uploadId, e);
+    }
+
+    remove(session);
+    // left in place by a storage which copied it
+    deleteQuietly(session.file);
+    log.info("Upload session {} committed as doc {} ({} bytes, {})", uploadId, docId, session.size, contentType);
+
+    return docId;
+  }
+
+  /**
+   * Accept chunks and commit again after a failed commit, or drop the session
+   * if its file is gone.
+   */
+  private void reopen(UploadSession session) {
+    try {
+      session.reopen();
+      log.warn("Upload session {} commit failed, session kept open for retry", session.uploadId);
+    } catch (IOException e) {
+      log.error("Upload session {} dropped, file cannot be reopened : {}", session.uploadId, e.getMessage());
+      remove(session);
+      deleteQuietly(session.file);
+    }
+  }
+
+  /**
+   * Drop session and received content.
+   *
+   * @param uploadId session id
+   * @return <code>false</code> if session does not exist
+   */
+  public boolean abort(String uploadId) {
+    var session = sessions.get(uploadId);
+
+    if (session == null) {
+      return false;
+    }
+
+    session.closeChannel();
+    remove(session);
+    deleteQuietly(session.file);
+    log.info("Upload session {} aborted", uploadId);
+
+    return true;
+  }
+
+  private UploadSession session(String uploadId) {
+    var session = sessions.get(uploadId);
+
+    if (session == null) {
+      throw new UploadSessionException(HttpStatus.NOT_FOUND, "Upload session " + uploadId + " not found");
+    }
+
+    return session;
+  }
+
+  private void expireSessions() {
+    var idleSince = System.currentTimeMillis() - sessionTimeoutMillis;
+
+    sessions.values().stream().filter(s -> s.lastAccess < idleSince).map(s -> s.uploadId).toList()
+        .forEach(uploadId -> {
+          if (abort(uploadId)) {
+            log.info("Upload session {} expired", uploadId);
+          }
+        });
+  }
+
+  /**
+   * Remove session files left by a previous run (sessions are not kept across
+   * restarts).
+   */
+  private void deleteSessionFiles() throws IOException {
+    try (var files = Files.newDirectoryStream(sessionFolder, "*" + SESSION_FILE_SUFFIX)) {
+      files.forEach(this::deleteQuietly);
+    }
+  }
+
+  private void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.warn("Cannot delete upload session file {} : {}", file, e.getMessage());
+    }
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    log.info("Stopping resumable uploads, {} session(s) dropped", sessions.size());
+    expiryTimer.shutdownNow();
+    sessions.keySet().forEach(this::abort);
+  }
+
+  /**
+   * One upload in progress. Received bytes are kept as merged
+   * <code>[start, end)</code> ranges, guarded by the session.
+   */
+  private static class UploadSession {
+
+    private final String uploadId;
+
+    private final long size;
+
+    private final Path file;
+
+    private FileChannel channel;
+
+    private final TreeMap<Long, Long> received = new TreeMap<>();
+
+    private long receivedBytes;
+
+    private int activeWrites;
+
+    private boolean closed;
+
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    private UploadSession(String uploadId, long size, Path file, FileChannel channel) {
+      this.uploadId = uploadId;
+      this.size = size;
+      this.file = file;
+      this.channel = channel;
+    }
+
+    private synchronized void beginWrite() {
+      if (closed) {
+        throw new UploadSessionException(HttpStatus.NOT_FOUND, "Upload session " + uploadId + " closed");
+      }
+
+      activeWrites++;
+      lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * @return bytes received for the first time
+     */
+    private synchronized long endWrite(long start, long end) {
+      activeWrites--;
+      lastAccess = System.currentTimeMillis();
+
+      // aborted meanwhile, already released
+      if (closed || end <= start) {
+        return 0;
+      }
+
+      var receivedBefore = receivedBytes;
+
+      var previous = received.floorEntry(start);
+
+      if (previous != null && previous.getValue() >= start) {
+        start = previous.getKey();
+        end = Math.max(end, previous.getValue());
+      }
+
+      for (var next = received.ceilingEntry(start); next != null && next.getKey() <= end; next = received
+          .ceilingEntry(start)) {
+        end = Math.max(end, next.getValue());
+        received.remove(next.getKey());
+      }
+
+      received.put(start, end);
+      receivedBytes = received.entrySet().stream().mapToLong(r -> r.getValue() - r.getKey()).sum();
+
+      return receivedBytes - receivedBefore;
+    }
+
+    private synchronized long receivedBytes() {
+      return receivedBytes;
+    }
+
+    /**
+     * Stop accepting chunks, once all bytes are received and no chunk is being
+     * written.
+     */
+    private synchronized void close() {
+      if (closed) {
+        throw new UploadSessionException(HttpStatus.CONFLICT, "Upload session " + uploadId + " being committed");
+      }
+
+      if (activeWrites > 0) {
+        throw new UploadSessionException(HttpStatus.CONFLICT,
+            activeWrites + " chunk(s) of upload session " + uploadId + " still being written");
+      }
+
+      if (receivedBytes < size) {
+        throw new UploadSessionException(HttpStatus.CONFLICT,
+            "Upload session " + uploadId + " incomplete, " + receivedBytes + " of " + size + " bytes received");
+      }
+
+      closeChannel();
+    }
+
+    private synchronized void closeChannel() {
+      closed = true;
+
+      try {
+        channel.close();
+      } catch (IOException e) {
+        log.warn("Cannot close upload session file {} : {}", file, e.getMessage());
+      }
+    }
+
+    private synchronized void reopen() throws IOException {
+      channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      closed = false;
+      lastAccess = System.currentTimeMillis();
+    }
+
+    private synchronized UploadProgressResponse progress() {
+      var ranges = new ArrayList<String>(received.size());
+
+      received.forEach((start, end) -> ranges.add(start + "-" + (end - 1)));
+
+      return UploadProgressResponse.builder().uploadId(uploadId).size(size).receivedBytes(receivedBytes)
+          .received(ranges).complete(receivedBytes == size).build();
+    }
+
+  }
+
+}
@@ -0,0 +1,152 @@
+package com.course.devops.blue.service.command.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.springframework.core.io.Resource;
+
+import com.course.devops.blue.api.response.base.JsonBasePage;
+import com.course.devops.blue.service.command.ByteBufferResource;
+import com.course.devops.blue.service.command.FileMetadata;
+import com.course.devops.blue.service.command.FileStorageService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Read-through cache in front of a {@link FileStorageService}: hot files are
+ * kept in direct (off-heap) buffers, bounded by a total byte budget with
+ * W-TinyLFU eviction (Caffeine). Files larger than the entry cap are always
+ * served by the delegate (from disk).
+ * <p>
+ * Hits, misses and evictions are exported as <code>cache.*</code> with
+ * <code>cache=&lt;name&gt;</code>, cached bytes as
+ * <code>devops.blue.file.cache.bytes</code>. Evicted buffers are released by
+ * the garbage collector.
+ */
+@Slf4j
+public class CachingFileStorageService implements FileStorageService {
+
+  private final FileStorageService delegate;
+
+  private final long maxEntryBytes;
+
+  private final Cache<String, ByteBuffer> cache;
+
+  public CachingFileStorageService(String name, FileStorageService delegate, long maxBytes, long maxEntryBytes,
+      MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.maxEntryBytes = Math.min(maxEntryBytes, Integer.MAX_VALUE);
+    this.cache = Caffeine.newBuilder().maximumWeight(maxBytes)
+        .weigher((String fileId, ByteBuffer content) -> content.capacity()).recordStats().build();
+
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    Gauge.builder("devops.blue.file.cache.bytes", cache,
+        c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L)).tag("cache", name)
+        .description("Bytes of file content held in cache (off-heap)").baseUnit("bytes").register(meterRegistry);
+
+    log.info("File cache {} enabled, max {} bytes, max {} bytes per file", name, maxBytes, this.maxEntryBytes);
+  }
+
+  @Override
+  public void init(String root) {
+    delegate.init(root);
+  }
+
+  @Override
+  public String save(InputStream content, String contentType) {
+    return delegate.save(content, contentType);
+  }
+
+  @Override
+  public String save(Path file, String contentType) {
+    return delegate.save(file, contentType);
+  }
+
+  @Override
+  public JsonBasePage<String> list(String after, int limit) {
+    return delegate.list(after, limit);
+  }
+
+  @Override
+  public FileMetadata metadata(String filename) {
+    return delegate.metadata(filename);
+  }
+
+  @Override
+  public boolean delete(String filename) {
+    var deleted = delegate.delete(filename);
+
+    cache.invalidate(filename);
+
+    return deleted;
+  }
+
+  @Override
+  public Resource load(String filename) {
+    var uncached = new Resource[1];
+
+    // one lookup (one hit / miss recorded), concurrent misses of the same file read it once
+    var content = cache.get(filename, f -> {
+      var resource = delegate.load(f);
+
+      uncached[0] = resource;
+      return resource != null && resource.isFile() && fitsEntry(resource) ? read(resource) : null;
+    });
+
+    if (content != null) {
+      return new ByteBufferResource(filename, content);
+    }
+
+    return uncached[0] != null ? uncached[0] : delegate.load(filename);
+  }
+
+  private boolean fitsEntry(Resource resource) {
+    try {
+      return resource.contentLength() <= maxEntryBytes;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Read whole file into a direct buffer.
+   *
+   * @return content, <code>null</code> if file is too large for cache or cannot
+   *         be read
+   */
+  private ByteBuffer read(Resource resource) {
+    try (var channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+      var size = channel.size();
+
+      if (size > maxEntryBytes) {
+        return null;
+      }
+
+      var content = ByteBuffer.allocateDirect((int) size);
+
+      while (content.hasRemaining() && channel.read(content) >= 0) {
+        // until buffer full
+      }
+
+      return content.flip();
+    } catch (IOException e) {
+      log.warn("Cannot cache {} : {}", resource.getFilename(), e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+}
@@ -0,0 +1,291 @@
+package com.course.devops.blue.service.command.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.io.Resource;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import com.course.devops.blue.api.response.base.JsonBasePage;
+import com.course.devops.blue.exception.FileStorageException;
+import com.course.devops.blue.service.command.CompressedResource;
+import com.course.devops.blue.service.command.FileMetadata;
+import com.course.devops.blue.service.command.FileStorageService;
+import com.course.devops.blue.service.command.GzipCompressingInputStream;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stores compressible content (by detected content type) gzip-compressed, in
+ * front of another storage. Compression is done once, while the upload streams
+ * to the delegate; downloads get the stored bytes as-is when the client
+ * accepts gzip, decompressed on the fly otherwise (see
+ * {@link CompressedResource}).
+ * <p>
+ * Original sizes of compressed files are kept in an append-only index
+ * (<code>.compression.idx</code>, <code>+ id size</code> / <code>- id</code>)
+ * next to the delegate's files. The record is appended once the delegate has
+ * stored the file; a file whose record cannot be appended is deleted, but a
+ * crash in between leaves it stored without record, served as raw gzip
+ * (rare, a few file system calls wide).
+ * <p>
+ * Exported as <code>devops.blue.storage.compression.saved</code> (bytes not
+ * written to disk), <code>devops.blue.storage.compression.ratio</code>
+ * (original / stored bytes of compressed files) and
+ * <code>devops.blue.storage.compression.cpu</code> (time spent in the codec
+ * per file, tagged <code>operation=compress|decompress</code>), all tagged
+ * with <code>storage=&lt;name&gt;</code>.
+ */
+@Slf4j
+public class CompressingFileStorageService implements FileStorageService {
+
+  private static final String INDEX_FILE = ".compression.idx";
+
+  private static final String INDEX_SEPARATOR = "\t";
+
+  private static final String RECORD_SAVED = "+";
+
+  private static final String RECORD_DELETED = "-";
+
+  private final FileStorageService delegate;
+
+  private final List<MimeType> compressibleTypes;
+
+  private final int level;
+
+  private Path indexFile = Paths.get("upload").resolve(INDEX_FILE);
+
+  /**
+   * Original size per compressed file id
+   */
+  private final Map<String, Long> originalSizes = new ConcurrentHashMap<>();
+
+  private final AtomicLong originalBytes = new AtomicLong();
+
+  private final AtomicLong storedBytes = new AtomicLong();
+
+  private final Timer compressTimer;
+
+  private final Timer decompressTimer;
+
+  /**
+   * @param name              storage name, for metrics
+   * @param delegate          storage of (compressed) content
+   * @param compressibleTypes content types to compress, wildcards allowed
+   *                          (<code>text/*</code>)
+   * @param level             deflate level, 1 (fastest) to 9 (smallest)
+   * @param meterRegistry     registry of compression metrics
+   */
+  public CompressingFileStorageService(String name, FileStorageService delegate, List<String> compressibleTypes,
+      int level, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.compressibleTypes = compressibleTypes.stream().map(String::trim).filter(StringUtils::isNotEmpty)
+        .map(MimeTypeUtils::parseMimeType).toList();
+    this.level = level;
+
+    Gauge.builder("devops.blue.storage.compression.saved", this, s -> s.originalBytes.get() - s.storedBytes.get())
+        .tag("storage", name).description("Bytes not written to disk thanks to compression").baseUnit("bytes")
+        .register(meterRegistry);
+    Gauge.builder("devops.blue.storage.compression.ratio", this, s -> s.compressionRatio()).tag("storage", name)
+        .description("Original bytes per stored byte, of compressed files").register(meterRegistry);
+    this.compressTimer = Timer.builder("devops.blue.storage.compression.cpu").tag("storage", name)
+        .tag("operation", "compress").description("Time spent compressing, per file").register(meterRegistry);
+    this.decompressTimer = Timer.builder("devops.blue.storage.compression.cpu").tag("storage", name)
+        .tag("operation", "decompress").description("Time spent decompressing, per download")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public void init(String root) {
+    delegate.init(root);
+
+    if (StringUtils.isNotEmpty(root)) {
+      this.indexFile = Paths.get(root).resolve(INDEX_FILE);
+    }
+
+    try {
+      loadIndex();
+    } catch (IOException e) {
+      log.error("Error init storage : {}", e.getMessage());
+    }
+  }
+
+  private synchronized void loadIndex() throws IOException {
+    if (!Files.exists(indexFile)) {
+      return;
+    }
+
+    try (var lines = Files.lines(indexFile, StandardCharsets.UTF_8)) {
+      lines.forEach(line -> {
+        var fields = StringUtils.split(line, INDEX_SEPARATOR);
+
+        try {
+          if (fields.length == 3 && RECORD_SAVED.equals(fields[0])) {
+            originalSizes.put(fields[1], Long.parseLong(fields[2]));
+          } else if (fields.length == 2 && RECORD_DELETED.equals(fields[0])) {
+            originalSizes.remove(fields[1]);
+          } else {
+            log.warn("Skip invalid compression record in {} : {}", indexFile, line);
+          }
+        } catch (NumberFormatException e) {
+          log.warn("Skip invalid compression record in {} : {}", indexFile, line);
+        }
+      });
+    }
+
+    originalSizes.forEach((fileId, originalSize) -> {
+      var stored = delegate.metadata(fileId);
+
+      if (stored != null) {
+        originalBytes.addAndGet(originalSize);
+        storedBytes.addAndGet(stored.getSize());
+      }
+    });
+
+    log.info("Loaded {} compressed files from {}", originalSizes.size(), indexFile);
+  }
+
+  private synchronized void appendIndex(String... fields) throws IOException {
+    Files.writeString(indexFile, String.join(INDEX_SEPARATOR, fields) + "\n", StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
+  @Override
+  public String save(InputStream content, String contentType) {
+    if (!isCompressible(contentType)) {
+      return delegate.save(content, contentType);
+    }
+
+    String fileId = null;
+
+    try (var compressed = new GzipCompressingInputStream(content, level)) {
+      fileId = delegate.save(compressed, contentType);
+      var originalSize = compressed.getUncompressedBytes();
+      var storedSize = delegate.metadata(fileId).getSize();
+
+      appendIndex(RECORD_SAVED, fileId, Long.toString(originalSize));
+      originalSizes.put(fileId, originalSize);
+      originalBytes.addAndGet(originalSize);
+      storedBytes.addAndGet(storedSize);
+      compressTimer.record(compressed.getDeflateNanos(), TimeUnit.NANOSECONDS);
+
+      return fileId;
+    } catch (IOException e) {
+      // without its record, the file would be served as raw gzip
+      if (fileId != null) {
+        deleteQuietly(fileId);
+      }
+
+      throw new FileStorageException("Cannot save compressed content", e);
+    }
+  }
+
+  private void deleteQuietly(String fileId) {
+    try {
+      delegate.delete(fileId);
+    } catch (FileStorageException e) {
+      log.warn("Cannot delete {} saved without compression record : {}", fileId, e.getMessage());
+    }
+  }
+
+  /**
+   * Compressible file is compressed while copied, others are handed over as-is.
+   */
+  @Override
+  public String save(Path file, String contentType) {
+    if (!isCompressible(contentType)) {
+      return delegate.save(file, contentType);
+    }
+
+    return FileStorageService.super.save(file, contentType);
+  }
+
+  @Override
+  public JsonBasePage<String> list(String after, int limit) {
+    return delegate.list(after, limit);
+  }
+
+  @Override
+  public Resource load(String filename) {
+    var stored = delegate.load(filename);
+    var originalSize = originalSizes.get(filename);
+
+    if (stored == null || originalSize == null) {
+      return stored;
+    }
+
+    return new CompressedResource(stored, originalSize, nanos -> decompressTimer.record(nanos, TimeUnit.NANOSECONDS));
+  }
+
+  @Override
+  public FileMetadata metadata(String filename) {
+    var stored = delegate.metadata(filename);
+    var originalSize = originalSizes.get(filename);
+
+    if (stored == null || originalSize == null) {
+      return stored;
+    }
+
+    return FileMetadata.builder().contentType(stored.getContentType()).size(originalSize)
+        .createdAt(stored.getCreatedAt()).contentEncoding(CompressedResource.ENCODING_GZIP)
+        .encodedSize(stored.getSize()).build();
+  }
+
+  @Override
+  public boolean delete(String filename) {
+    var stored = delegate.metadata(filename);
+    var deleted = delegate.delete(filename);
+    var originalSize = originalSizes.remove(filename);
+
+    if (originalSize != null) {
+      try {
+        appendIndex(RECORD_DELETED, filename);
+      } catch (IOException e) {
+        throw new FileStorageException("Cannot delete " + filename, e);
+      }
+
+      originalBytes.addAndGet(-originalSize);
+      storedBytes.addAndGet(stored != null ? -stored.getSize() : 0);
+    }
+
+    return deleted;
+  }
+
+  private boolean isCompressible(String contentType) {
+    try {
+      var type = MimeTypeUtils.parseMimeType(contentType);
+
+      return compressibleTypes.stream().anyMatch(t -> t.includes(type));
+    } catch (InvalidMimeTypeException e) {
+      return false;
+    }
+  }
+
+  private double compressionRatio() {
+    var stored = storedBytes.get();
+
+    return stored == 0 ? 1 : (double) originalBytes.get() / stored;
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+}
@@ -0,0 +1,384 @@
+package com.course.devops.blue.service.command.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+
+import com.course.devops.blue.api.response.base.JsonBasePage;
+import com.course.devops.blue.exception.FileStorageException;
+import com.course.devops.blue.service.command.FileMetadata;
+import com.course.devops.blue.service.command.FileStorageService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Content-addressed storage: uploads are hashed (SHA-256), then stored once per
+ * content under <code>blobs/&lt;2 hex&gt;/&lt;sha-256&gt;</code>. File ids
+ * (UUID) point to their blob through a reference-counted index, and a blob is
+ * deleted with its last reference.
+ * <p>
+ * A complete file ({@link #save(Path, String)}, e.g. a spooled multipart
+ * upload) is hashed in place first, and moved (copied across file systems) only
+ * when its content is new: a duplicate costs the hashing pass only. A stream
+ * has to be written to a temporary file while hashed, which is discarded for a
+ * duplicate.
+ * <p>
+ * The index is an append-only file (<code>.dedup.idx</code>) replayed at init:
+ * <code>+ id hash size createdAt contentType</code> per saved file,
+ * <code>- id</code> per deleted file.
+ * <p>
+ * Exported as <code>devops.blue.storage.dedup.ratio</code> (stored bytes /
+ * bytes on disk), <code>devops.blue.storage.dedup.saved</code> (bytes) and
+ * <code>devops.blue.storage.dedup.duplicates</code> (duplicate uploads),
+ * tagged with <code>storage=&lt;name&gt;</code>.
+ */
+@Slf4j
+public class DedupFileStorageService implements FileStorageService {
+
+  private static final String BLOB_FOLDER = "blobs";
+
+  private static final String TEMP_FILE_PREFIX = ".upload-";
+
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private static final String INDEX_FILE = ".dedup.idx";
+
+  private static final String INDEX_SEPARATOR = "\t";
+
+  private static final String RECORD_SAVED = "+";
+
+  private static final String RECORD_DELETED = "-";
+
+  private static final String HASH_ALGORITHM = "SHA-256";
+
+  private Path uploadFolder = Paths.get("upload");
+
+  private Path blobFolder = uploadFolder.resolve(BLOB_FOLDER);
+
+  private final Map<String, BlobReference> references = new ConcurrentHashMap<>();
+
+  /**
+   * References per blob hash, guarded by <code>this</code>
+   */
+  private final Map<String, Integer> referenceCounts = new HashMap<>();
+
+  private final FileIdIndex fileIdIndex = new FileIdIndex();
+
+  private final AtomicLong storedBytes = new AtomicLong();
+
+  private final AtomicLong blobBytes = new AtomicLong();
+
+  private final Counter duplicateCounter;
+
+  private record BlobReference(String hash, FileMetadata metadata) {
+  }
+
+  public DedupFileStorageService(String name, MeterRegistry meterRegistry) {
+    Gauge.builder("devops.blue.storage.dedup.ratio", this, s -> s.dedupRatio()).tag("storage", name)
+        .description("Bytes stored by clients per byte on disk").register(meterRegistry);
+    Gauge.builder("devops.blue.storage.dedup.saved", this, s -> s.storedBytes.get() - s.blobBytes.get())
+        .tag("storage", name).description("Bytes not written thanks to deduplication").baseUnit("bytes")
+        .register(meterRegistry);
+    this.duplicateCounter = Counter.builder("devops.blue.storage.dedup.duplicates").tag("storage", name)
+        .description("Uploads whose content was already stored").register(meterRegistry);
+  }
+
+  @Override
+  public void init(String root) {
+    try {
+      if (StringUtils.isNotEmpty(root)) {
+        this.uploadFolder = Paths.get(root);
+        this.blobFolder = uploadFolder.resolve(BLOB_FOLDER);
+      }
+      Files.createDirectories(blobFolder);
+      deleteTempFiles();
+      loadIndex();
+    } catch (IOException e) {
+      log.error("Error init storage : {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Remove temporary files left by uploads interrupted by a crash / kill.
+   */
+  private void deleteTempFiles() throws IOException {
+    try (var tempFiles = Files.newDirectoryStream(uploadFolder, TEMP_FILE_PREFIX + "*" + TEMP_FILE_SUFFIX)) {
+      tempFiles.forEach(this::deleteQuietly);
+    }
+  }
+
+  private synchronized void loadIndex() throws IOException {
+    var index = uploadFolder.resolve(INDEX_FILE);
+
+    if (!Files.exists(index)) {
+      return;
+    }
+
+    try (var lines = Files.lines(index, StandardCharsets.UTF_8)) {
+      lines.forEach(line -> {
+        var fields = StringUtils.split(line, INDEX_SEPARATOR);
+
+        try {
+          if (fields.length == 6 && RECORD_SAVED.equals(fields[0])) {
+            var metadata = FileMetadata.builder().size(Long.parseLong(fields[3]))
+                .createdAt(Long.parseLong(fields[4])).contentType(fields[5]).build();
+            references.put(fields[1], new BlobReference(fields[2], metadata));
+          } else if (fields.length == 2 && RECORD_DELETED.equals(fields[0])) {
+            references.remove(fields[1]);
+          } else {
+            log.warn("Skip invalid dedup record in {} : {}", index, line);
+          }
+        } catch (NumberFormatException e) {
+          log.warn("Skip invalid dedup record in {} : {}", index, line);
+        }
+      });
+    }
+
+    references.forEach((fileId, reference) -> {
+      fileIdIndex.add(fileId);
+      storedBytes.addAndGet(reference.metadata().getSize());
+
+      if (referenceCounts.merge(reference.hash(), 1, Integer::sum) == 1) {
+        blobBytes.addAndGet(reference.metadata().getSize());
+      }
+    });
+
+    log.info("Loaded {} files ({} distinct contents) from {}", references.size(), referenceCounts.size(), index);
+  }
+
+  private void appendIndex(String... fields) throws IOException {
+    Files.writeString(uploadFolder.resolve(INDEX_FILE), String.join(INDEX_SEPARATOR, fields) + "\n",
+        StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
+  @Override
+  public String save(InputStream content, String contentType) {
+    final var filename = UUID.randomUUID().toString();
+    Path tempFile = null;
+
+    try {
+      var digest = MessageDigest.getInstance(HASH_ALGORITHM);
+      long size;
+
+      // same file system as the blobs, so the rename is atomic
+      tempFile = Files.createTempFile(uploadFolder, TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+
+      try (var out = Files.newOutputStream(tempFile)) {
+        size = new DigestInputStream(content, digest).transferTo(out);
+      }
+
+      var metadata = FileMetadata.builder().contentType(contentType).size(size)
+          .createdAt(System.currentTimeMillis()).build();
+      commit(filename, HexFormat.of().formatHex(digest.digest()), metadata, tempFile);
+    } catch (IOException | NoSuchAlgorithmException e) {
+      log.error("Error saving {} : {}", filename, e.getMessage());
+
+      throw new FileStorageException("Cannot save " + filename, e);
+    } finally {
+      // moved to a blob if content was new, discarded otherwise
+      deleteQuietly(tempFile);
+    }
+
+    return filename;
+  }
+
+  /**
+   * Hash file in place, then move it as blob only if content is new. File is
+   * left in place for a duplicate.
+   */
+  @Override
+  public String save(Path file, String contentType) {
+    final var filename = UUID.randomUUID().toString();
+    Path tempFile = null;
+
+    try {
+      var digest = MessageDigest.getInstance(HASH_ALGORITHM);
+      long size;
+
+      try (var content = new DigestInputStream(Files.newInputStream(file), digest)) {
+        size = content.transferTo(OutputStream.nullOutputStream());
+      }
+
+      var hash = HexFormat.of().formatHex(digest.digest());
+
+      // new content : copied (when on another file system) outside of the lock
+      if (!isStored(hash)) {
+        tempFile = Files.createTempFile(uploadFolder, TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+        moveOrCopy(file, tempFile);
+      }
+
+      var metadata = FileMetadata.builder().contentType(contentType).size(size)
+          .createdAt(System.currentTimeMillis()).build();
+      commit(filename, hash, metadata, tempFile != null ? tempFile : file);
+    } catch (IOException | NoSuchAlgorithmException e) {
+      log.error("Error saving {} : {}", filename, e.getMessage());
+
+      throw new FileStorageException("Cannot save " + filename, e);
+    } finally {
+      deleteQuietly(tempFile);
+    }
+
+    return filename;
+  }
+
+  private synchronized boolean isStored(String hash) {
+    return referenceCounts.containsKey(hash);
+  }
+
+  /**
+   * Keep content as blob if it is new (moved), leave it otherwise, then record
+   * the reference.
+   */
+  private synchronized void commit(String filename, String hash, FileMetadata metadata, Path content)
+      throws IOException {
+    var referenceCount = referenceCounts.getOrDefault(hash, 0);
+
+    if (referenceCount == 0) {
+      var blob = blobPath(hash);
+
+      Files.createDirectories(blob.getParent());
+
+      try {
+        Files.move(content, blob, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        // file on another file system, whose last reference was deleted since its hash was checked (rare)
+        var tempFile = Files.createTempFile(uploadFolder, TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+
+        try {
+          Files.copy(content, tempFile, StandardCopyOption.REPLACE_EXISTING);
+          Files.move(tempFile, blob, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+          deleteQuietly(tempFile);
+        }
+      }
+    }
+
+    appendIndex(RECORD_SAVED, filename, hash, Long.toString(metadata.getSize()),
+        Long.toString(metadata.getCreatedAt()), metadata.getContentType());
+
+    referenceCounts.put(hash, referenceCount + 1);
+    references.put(filename, new BlobReference(hash, metadata));
+    fileIdIndex.add(filename);
+    storedBytes.addAndGet(metadata.getSize());
+
+    if (referenceCount == 0) {
+      blobBytes.addAndGet(metadata.getSize());
+    } else {
+      duplicateCounter.increment();
+    }
+  }
+
+  @Override
+  public synchronized boolean delete(String filename) {
+    var reference = references.get(filename);
+
+    if (reference == null) {
+      return false;
+    }
+
+    try {
+      appendIndex(RECORD_DELETED, filename);
+
+      references.remove(filename);
+      fileIdIndex.remove(filename);
+      storedBytes.addAndGet(-reference.metadata().getSize());
+
+      var referenceCount = referenceCounts.merge(reference.hash(), -1, Integer::sum);
+
+      if (referenceCount <= 0) {
+        referenceCounts.remove(reference.hash());
+        blobBytes.addAndGet(-reference.metadata().getSize());
+        Files.deleteIfExists(blobPath(reference.hash()));
+      }
+
+      return true;
+    } catch (IOException e) {
+      throw new FileStorageException("Cannot delete " + filename, e);
+    }
+  }
+
+  @Override
+  public JsonBasePage<String> list(String after, int limit) {
+    return fileIdIndex.page(after, limit);
+  }
+
+  @Override
+  public Resource load(String filename) {
+    var reference = references.get(filename);
+
+    if (reference == null) {
+      return null;
+    }
+
+    try {
+      return new UrlResource(blobPath(reference.hash()).toUri());
+    } catch (MalformedURLException e) {
+      throw new FileStorageException("Cannot load " + filename, e);
+    }
+  }
+
+  @Override
+  public FileMetadata metadata(String filename) {
+    var reference = references.get(filename);
+
+    return reference != null ? reference.metadata() : null;
+  }
+
+  /**
+   * Rename when on the same file system, copy otherwise
+   */
+  private static void moveOrCopy(Path source, Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private Path blobPath(String hash) {
+    return blobFolder.resolve(hash.substring(0, 2)).resolve(hash);
+  }
+
+  private double dedupRatio() {
+    var onDisk = blobBytes.get();
+
+    return onDisk == 0 ? 1 : (double) storedBytes.get() / onDisk;
+  }
+
+  private void deleteQuietly(Path file) {
+    if (file == null) {
+      return;
+    }
+
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.warn("Cannot delete temporary file {} : {}", file, e.getMessage());
+    }
+  }
+
+}
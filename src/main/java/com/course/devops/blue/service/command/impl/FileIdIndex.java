@@ -0,0 +1,71 @@
+package com.course.devops.blue.service.command.impl;
+
+import java.util.ArrayList;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.course.devops.blue.api.response.base.JsonBasePage;
+
+/**
+ * Sorted in-memory index of stored file ids, for keyset (cursor) pagination:
+ * a page starts right after the last id of the previous page, so listing
+ * costs O(log n + page size) whatever the number of files. The id count is
+ * kept apart, as the skip list counts by walking all ids.
+ */
+public class FileIdIndex {
+
+  private final NavigableSet<String> ids = new ConcurrentSkipListSet<>();
+
+  private final AtomicInteger count = new AtomicInteger();
+
+  public void add(String fileId) {
+    if (ids.add(fileId)) {
+      count.incrementAndGet();
+    }
+  }
+
+  public void remove(String fileId) {
+    if (ids.remove(fileId)) {
+      count.decrementAndGet();
+    }
+  }
+
+  public boolean contains(String fileId) {
+    return ids.contains(fileId);
+  }
+
+  public int size() {
+    return count.get();
+  }
+
+  /**
+   * Page of ids after cursor, in order.
+   *
+   * @param after last id of previous page (exclusive), <code>null</code> for
+   *              first page
+   * @param limit max ids
+   * @return page, with cursor of next page if any
+   */
+  public JsonBasePage<String> page(String after, int limit) {
+    var tail = after == null ? ids : ids.tailSet(after, false);
+    var records = new ArrayList<String>(Math.min(limit, 1024));
+    String nextCursor = null;
+
+    for (var id : tail) {
+      // one more id than requested tells there is a next page
+      if (records.size() == limit) {
+        nextCursor = records.get(limit - 1);
+        break;
+      }
+
+      records.add(id);
+    }
+
+    var totalRecords = count.get();
+
+    return JsonBasePage.<String>builder().size(limit).totalRecords(totalRecords)
+        .totalPage((int) Math.ceil((double) totalRecords / limit)).records(records).nextCursor(nextCursor).build();
+  }
+
+}
@@ -1,29 +1,95 @@
 package com.course.devops.blue.service.command.impl;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.tika.Tika;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
+import com.course.devops.blue.api.response.base.JsonBasePage;
+import com.course.devops.blue.exception.FileStorageException;
+import com.course.devops.blue.service.command.FileMetadata;
 import com.course.devops.blue.service.command.FileStorageService;
 
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Stores each upload as one file named by its id (UUID).
+ * <p>
+ * In sharded layout, files are spread over two levels of directories named by
+ * the first hex digits of the id (<code>ab/cd/abcd...</code>), so no directory
+ * grows beyond a few thousand entries. Files of a flat (legacy) folder are
+ * migrated in the background when sharding is enabled; meanwhile both layouts
+ * are served.
+ */
 @Service
 @Slf4j
 public class FileStorageServiceImpl implements FileStorageService {
 
+  private static final String TEMP_FILE_PREFIX = ".upload-";
+
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private static final String METADATA_INDEX_FILE = ".metadata.idx";
+
+  private static final String METADATA_INDEX_SEPARATOR = "\t";
+
+  private static final int SHARD_PREFIX_LENGTH = 2;
+
+  /**
+   * Flat files are removed this long after being linked into shards, so reads
+   * that already resolved the flat path (e.g. sendfile, opened after the
+   * handler returns) still find it.
+   */
+  private static final long MIGRATION_GRACE_MILLIS = 30_000;
+
   private Path uploadFolder = Paths.get("upload");
 
+  private final Map<String, FileMetadata> metadataIndex = new ConcurrentHashMap<>();
+
+  private final FileIdIndex fileIdIndex = new FileIdIndex();
+
+  private final Tika tika = new Tika();
+
+  private final boolean sharded;
+
+  /**
+   * Runs the migration to sharded layout, if any
+   */
+  private ScheduledThreadPoolExecutor migration;
+
+  public FileStorageServiceImpl() {
+    this(false);
+  }
+
+  /**
+   * @param sharded <code>true</code> to store files in sharded layout, and
+   *                migrate existing flat files
+   */
+  public FileStorageServiceImpl(boolean sharded) {
+    this.sharded = sharded;
+  }
+
   @Override
   public void init(String root) {
     try {
@@ -31,52 +97,374 @@ public class FileStorageServiceImpl implements FileStorageService {
         this.uploadFolder = Paths.get(root);
       }
       Files.createDirectories(uploadFolder);
+      deleteTempFiles();
+      loadFileIdIndex();
+      loadMetadataIndex();
+
+      if (sharded && hasFlatFiles()) {
+        var threadFactory = new CustomizableThreadFactory("storage-migration-" + uploadFolder.getFileName() + "-");
+        threadFactory.setDaemon(true);
+        migration = new ScheduledThreadPoolExecutor(1, threadFactory);
+        migration.execute(this::migrateToShards);
+      }
     } catch (IOException e) {
       log.error("Error init storage : {}", e.getMessage());
     }
   }
 
+  /**
+   * Remove temporary files left by uploads interrupted by a crash / kill.
+   */
+  private void deleteTempFiles() throws IOException {
+    try (var tempFiles = Files.newDirectoryStream(uploadFolder, TEMP_FILE_PREFIX + "*" + TEMP_FILE_SUFFIX)) {
+      tempFiles.forEach(this::deleteQuietly);
+    }
+  }
+
+  /**
+   * Scan upload folder once (flat and sharded files), later changes are applied
+   * by save / delete.
+   */
+  private void loadFileIdIndex() throws IOException {
+    try (var files = Files.walk(uploadFolder, 3)) {
+      files.filter(this::isStoredFile).map(f -> f.getFileName().toString()).forEach(fileIdIndex::add);
+    }
+
+    log.info("Indexed {} files in {}", fileIdIndex.size(), uploadFolder);
+  }
+
+  /**
+   * Load metadata index. Later records of the same file win, a negative size
+   * marks a deleted file.
+   */
+  private void loadMetadataIndex() throws IOException {
+    var index = uploadFolder.resolve(METADATA_INDEX_FILE);
+
+    if (!Files.exists(index)) {
+      return;
+    }
+
+    try (var lines = Files.lines(index, StandardCharsets.UTF_8)) {
+      lines.forEach(line -> {
+        var fields = StringUtils.split(line, METADATA_INDEX_SEPARATOR);
+
+        if (fields.length != 4) {
+          log.warn("Skip invalid metadata record in {} : {}", index, line);
+          return;
+        }
+
+        try {
+          var size = Long.parseLong(fields[1]);
+
+          if (size < 0) {
+            metadataIndex.remove(fields[0]);
+          } else {
+            metadataIndex.put(fields[0], FileMetadata.builder().size(size).createdAt(Long.parseLong(fields[2]))
+                .contentType(fields[3]).build());
+          }
+        } catch (NumberFormatException e) {
+          log.warn("Skip invalid metadata record in {} : {}", index, line);
+        }
+      });
+    }
+
+    log.info("Loaded metadata of {} files from {}", metadataIndex.size(), index);
+  }
+
+  /**
+   * Append metadata record, <code>null</code> metadata records a deletion.
+   */
+  private synchronized void appendMetadataIndex(String filename, FileMetadata metadata) throws IOException {
+    var record = metadata == null
+        ? String.join(METADATA_INDEX_SEPARATOR, filename, "-1", Long.toString(System.currentTimeMillis()), "-")
+        : String.join(METADATA_INDEX_SEPARATOR, filename, Long.toString(metadata.getSize()),
+            Long.toString(metadata.getCreatedAt()), metadata.getContentType());
+
+    Files.writeString(uploadFolder.resolve(METADATA_INDEX_FILE), record + "\n", StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
   @Override
-  public String save(MultipartFile f) {
+  public String save(InputStream content, String contentType) {
     final var filename = UUID.randomUUID().toString();
+    Path tempFile = null;
 
     try {
-      Files.copy(f.getInputStream(), this.uploadFolder.resolve(filename));
+      // same folder as the target, so the rename is atomic (same file system)
+      tempFile = Files.createTempFile(uploadFolder, TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+      var size = Files.copy(content, tempFile, StandardCopyOption.REPLACE_EXISTING);
+
+      store(filename, tempFile, size, contentType);
     } catch (IOException e) {
-      var errorText = String.format("Error saving {} : {}", f.getOriginalFilename(), e.getMessage());
-      log.error(errorText);
+      deleteQuietly(tempFile);
+      log.error("Error saving {} : {}", filename, e.getMessage());
 
-      return errorText;
+      throw new FileStorageException("Cannot save " + filename, e);
     }
 
     return filename;
   }
 
+  /**
+   * Move file into storage when on the same file system, copy it otherwise.
+   */
   @Override
-  public List<String> list() {
-    var allFiles = new ArrayList<String>();
+  public String save(Path file, String contentType) {
+    final var filename = UUID.randomUUID().toString();
 
     try {
-      Files.list(uploadFolder).forEach(c -> allFiles.add(c.getFileName().toString()));
+      store(filename, file, Files.size(file), contentType);
+    } catch (AtomicMoveNotSupportedException e) {
+      return FileStorageService.super.save(file, contentType);
     } catch (IOException e) {
-      log.error("Cannot iterate files : " + e.getMessage());
+      log.error("Error saving {} : {}", filename, e.getMessage());
+
+      throw new FileStorageException("Cannot save " + filename, e);
     }
 
-    return allFiles;
+    return filename;
+  }
+
+  /**
+   * Rename complete file to its final path, then record it.
+   */
+  private void store(String filename, Path file, long size, String contentType) throws IOException {
+    var target = sharded ? shardPath(filename) : flatPath(filename);
+
+    Files.createDirectories(target.getParent());
+    Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+
+    var metadata = FileMetadata.builder().contentType(contentType).size(size).createdAt(System.currentTimeMillis())
+        .build();
+    metadataIndex.put(filename, metadata);
+    fileIdIndex.add(filename);
+    appendMetadataIndex(filename, metadata);
+  }
+
+  @Override
+  public JsonBasePage<String> list(String after, int limit) {
+    return fileIdIndex.page(after, limit);
   }
 
   @Override
   public Resource load(String filename) {
+    var file = locate(filename);
+
+    if (file == null) {
+      return null;
+    }
+
     try {
-      var file = uploadFolder.resolve(filename);
-      var resource = new UrlResource(file.toUri());
-      if (resource.exists() || resource.isReadable()) {
-        return resource;
-      } else {
-        return null;
+      return new UrlResource(file.toUri());
+    } catch (MalformedURLException e) {
+      throw new FileStorageException("Cannot load " + filename, e);
+    }
+  }
+
+  @Override
+  public FileMetadata metadata(String filename) {
+    var metadata = metadataIndex.get(filename);
+
+    if (metadata != null) {
+      return metadata;
+    }
+
+    var file = locate(filename);
+
+    // legacy file (saved before metadata was recorded), detect once
+    if (file == null) {
+      return null;
+    }
+
+    try (var content = Files.newInputStream(file)) {
+      var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+      metadata = FileMetadata.builder().contentType(tika.detect(content)).size(attributes.size())
+          .createdAt(attributes.lastModifiedTime().toMillis()).build();
+      metadataIndex.put(filename, metadata);
+      appendMetadataIndex(filename, metadata);
+
+      return metadata;
+    } catch (IOException e) {
+      throw new FileStorageException("Cannot read metadata of " + filename, e);
+    }
+  }
+
+  @Override
+  public boolean delete(String filename) {
+    // only indexed ids, never temporary or index files
+    if (!fileIdIndex.contains(filename)) {
+      return false;
+    }
+
+    try {
+      fileIdIndex.remove(filename);
+
+      var deleted = Files.deleteIfExists(shardPath(filename)) | Files.deleteIfExists(flatPath(filename));
+
+      metadataIndex.remove(filename);
+      appendMetadataIndex(filename, null);
+
+      return deleted;
+    } catch (IOException e) {
+      throw new FileStorageException("Cannot delete " + filename, e);
+    }
+  }
+
+  /**
+   * Current path of a stored file, in either layout.
+   *
+   * @return path, <code>null</code> if file does not exist (or is not a stored
+   *         file id)
+   */
+  private Path locate(String filename) {
+    if (!fileIdIndex.contains(filename)) {
+      return null;
+    }
+
+    var shard = shardPath(filename);
+
+    if (Files.exists(shard)) {
+      return shard;
+    }
+
+    var flat = flatPath(filename);
+
+    if (Files.exists(flat)) {
+      return flat;
+    }
+
+    // migrated between both checks
+    return Files.exists(shard) ? shard : null;
+  }
+
+  private Path flatPath(String filename) {
+    return uploadFolder.resolve(filename);
+  }
+
+  private Path shardPath(String filename) {
+    return uploadFolder.resolve(filename.substring(0, SHARD_PREFIX_LENGTH))
+        .resolve(filename.substring(SHARD_PREFIX_LENGTH, 2 * SHARD_PREFIX_LENGTH)).resolve(filename);
+  }
+
+  /**
+   * File at its flat or sharded path (not a temporary, index or other storage
+   * mode's file).
+   */
+  private boolean isStoredFile(Path file) {
+    var name = file.getFileName().toString();
+
+    if (name.startsWith(".") || name.length() <= 2 * SHARD_PREFIX_LENGTH) {
+      return false;
+    }
+
+    return (file.equals(flatPath(name)) || file.equals(shardPath(name))) && Files.isRegularFile(file);
+  }
+
+  private boolean isFlatFile(Path file) {
+    return isStoredFile(file) && uploadFolder.equals(file.getParent());
+  }
+
+  private boolean hasFlatFiles() throws IOException {
+    try (var flatFiles = Files.newDirectoryStream(uploadFolder, this::isFlatFile)) {
+      return flatFiles.iterator().hasNext();
+    }
+  }
+
+  /**
+   * Move flat files into shards, while both layouts are served: link each file
+   * into its shard first (reads then find the shard), remove flat entries
+   * after a grace period.
+   */
+  private void migrateToShards() {
+    log.info("Migrating {} to sharded layout", uploadFolder);
+
+    try {
+      var linked = 0;
+
+      try (var flatFiles = Files.newDirectoryStream(uploadFolder, this::isFlatFile)) {
+        for (var flat : flatFiles) {
+          if (linkToShard(flat)) {
+            linked++;
+          }
+        }
       }
-    } catch (Exception e) {
-      throw new RuntimeException("Error: " + e.getMessage());
+
+      log.info("Linked {} files of {} into shards, removing flat entries in {} ms", linked, uploadFolder,
+          MIGRATION_GRACE_MILLIS);
+      migration.schedule(this::removeFlatFiles, MIGRATION_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (IOException e) {
+      log.error("Migration of {} to sharded layout stopped, will resume on restart : {}", uploadFolder,
+          e.getMessage());
+    }
+  }
+
+  private void removeFlatFiles() {
+    try {
+      var removed = 0;
+
+      try (var flatFiles = Files.newDirectoryStream(uploadFolder, this::isFlatFile)) {
+        for (var flat : flatFiles) {
+          if (Files.exists(shardPath(flat.getFileName().toString()))) {
+            Files.delete(flat);
+            removed++;
+          }
+        }
+      }
+
+      log.info("Migration of {} to sharded layout done, {} files moved", uploadFolder, removed);
+    } catch (IOException e) {
+      log.error("Migration of {} to sharded layout stopped, will resume on restart : {}", uploadFolder,
+          e.getMessage());
+    } finally {
+      migration.shutdown();
+    }
+  }
+
+  /**
+   * Stop migration, an unfinished one resumes on restart.
+   */
+  @Override
+  public void close() {
+    if (migration != null) {
+      migration.shutdownNow();
+    }
+  }
+
+  private boolean linkToShard(Path flat) throws IOException {
+    var filename = flat.getFileName().toString();
+    var shard = shardPath(filename);
+
+    Files.createDirectories(shard.getParent());
+
+    try {
+      Files.createLink(shard, flat);
+    } catch (FileAlreadyExistsException e) {
+      // linked by an earlier, interrupted migration
+      return false;
+    } catch (NoSuchFileException e) {
+      // deleted meanwhile
+      return false;
+    }
+
+    // deleted while being linked, do not bring it back
+    if (!fileIdIndex.contains(filename)) {
+      Files.deleteIfExists(shard);
+      return false;
+    }
+
+    return true;
+  }
+
+  private void deleteQuietly(Path file) {
+    if (file == null) {
+      return;
+    }
+
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.warn("Cannot delete temporary file {} : {}", file, e.getMessage());
     }
   }
 
@@ -0,0 +1,579 @@
+package com.course.devops.blue.service.command.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.course.devops.blue.api.response.base.JsonBasePage;
+import com.course.devops.blue.exception.FileStorageException;
+import com.course.devops.blue.service.command.ByteBufferResource;
+import com.course.devops.blue.service.command.FileMetadata;
+import com.course.devops.blue.service.command.FileStorageService;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Packs stored files into large append-only segment files
+ * (<code>segments/segment-&lt;n&gt;.dat</code>), so a small file costs no inode,
+ * no open / close and no directory update of its own. The active segment is
+ * mapped at its full size up front; a file is appended with a positional write,
+ * and read as a slice of the mapped segment (no system call, no heap copy).
+ * <p>
+ * Locations are kept in memory, and in an append-only index
+ * (<code>.segment.idx</code>) replayed at init:
+ * <code>+ id segment offset size createdAt contentType</code> per saved (or
+ * moved) file, <code>- id</code> per deleted file.
+ * <p>
+ * Deleted files leave dead bytes in their segment. A background compactor
+ * copies the live files of mostly dead, sealed segments into the active one,
+ * deletes those segments and rewrites the index. Exported as
+ * <code>devops.blue.storage.segment.files</code> and
+ * <code>devops.blue.storage.segment.dead</code> (bytes), tagged with
+ * <code>storage=&lt;name&gt;</code>.
+ */
+@Slf4j
+public class SegmentFileStorageService implements FileStorageService {
+
+  private static final String SEGMENT_FOLDER = "segments";
+
+  private static final String SEGMENT_FILE_PREFIX = "segment-";
+
+  private static final String SEGMENT_FILE_SUFFIX = ".dat";
+
+  private static final String TEMP_FILE_PREFIX = ".upload-";
+
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private static final String INDEX_FILE = ".segment.idx";
+
+  private static final String INDEX_SEPARATOR = "\t";
+
+  private static final String RECORD_SAVED = "+";
+
+  private static final String RECORD_DELETED = "-";
+
+  /**
+   * Uploads up to this size are appended straight from memory, larger ones are
+   * spooled to a temporary file first (a segment is locked while appending)
+   */
+  private static final int INLINE_MAX_BYTES = 1024 * 1024;
+
+  private static final long COMPACTOR_STOP_SECONDS = 5;
+
+  private Path uploadFolder = Paths.get("upload");
+
+  private Path segmentFolder = uploadFolder.resolve(SEGMENT_FOLDER);
+
+  private final long maxSegmentBytes;
+
+  private final double compactDeadRatio;
+
+  private final Map<String, BlobLocation> locations = new ConcurrentHashMap<>();
+
+  private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+
+  private final FileIdIndex fileIdIndex = new FileIdIndex();
+
+  private final ScheduledThreadPoolExecutor compactor;
+
+  /**
+   * Segment receiving new files, guarded by <code>this</code>
+   */
+  private Segment activeSegment;
+
+  private record BlobLocation(int segment, int offset, FileMetadata metadata) {
+  }
+
+  /**
+   * @param name              storage name, for metrics and threads
+   * @param maxSegmentBytes   size of a segment (a larger file gets a segment of
+   *                          its own), at most 2 GB as segments are mapped
+   * @param compactDeadRatio  sealed segments with at least this ratio of dead
+   *                          bytes are compacted
+   * @param compactInterval   interval between compaction runs, in seconds
+   * @param meterRegistry     registry of storage metrics
+   */
+  public SegmentFileStorageService(String name, long maxSegmentBytes, double compactDeadRatio,
+      long compactInterval, MeterRegistry meterRegistry) {
+    this.maxSegmentBytes = Math.min(maxSegmentBytes, Integer.MAX_VALUE);
+    this.compactDeadRatio = compactDeadRatio;
+    var threadFactory = new CustomizableThreadFactory("segment-compactor-" + name + "-");
+    threadFactory.setDaemon(true);
+    this.compactor = new ScheduledThreadPoolExecutor(1, threadFactory);
+    this.compactor.scheduleWithFixedDelay(this::compact, compactInterval, compactInterval, TimeUnit.SECONDS);
+
+    Gauge.builder("devops.blue.storage.segment.files", segments, Map::size).tag("storage", name)
+        .description("Segment files").register(meterRegistry);
+    Gauge.builder("devops.blue.storage.segment.dead", this, s -> s.deadBytes()).tag("storage", name)
+        .description("Bytes of deleted files not yet reclaimed by compaction").baseUnit("bytes")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public void init(String root) {
+    try {
+      if (StringUtils.isNotEmpty(root)) {
+        this.uploadFolder = Paths.get(root);
+        this.segmentFolder = uploadFolder.resolve(SEGMENT_FOLDER);
+      }
+      Files.createDirectories(segmentFolder);
+      deleteTempFiles();
+      loadIndex();
+      openSegments();
+    } catch (IOException e) {
+      log.error("Error init storage : {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Remove temporary files left by uploads interrupted by a crash / kill.
+   */
+  private void deleteTempFiles() throws IOException {
+    try (var tempFiles = Files.newDirectoryStream(uploadFolder, TEMP_FILE_PREFIX + "*" + TEMP_FILE_SUFFIX)) {
+      tempFiles.forEach(this::deleteQuietly);
+    }
+  }
+
+  private synchronized void loadIndex() throws IOException {
+    var index = uploadFolder.resolve(INDEX_FILE);
+
+    if (!Files.exists(index)) {
+      return;
+    }
+
+    try (var lines = Files.lines(index, StandardCharsets.UTF_8)) {
+      lines.forEach(line -> {
+        var fields = StringUtils.split(line, INDEX_SEPARATOR);
+
+        try {
+          if (fields.length == 7 && RECORD_SAVED.equals(fields[0])) {
+            var metadata = FileMetadata.builder().size(Long.parseLong(fields[4]))
+                .createdAt(Long.parseLong(fields[5])).contentType(fields[6]).build();
+            locations.put(fields[1],
+                new BlobLocation(Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), metadata));
+          } else if (fields.length == 2 && RECORD_DELETED.equals(fields[0])) {
+            locations.remove(fields[1]);
+          } else {
+            log.warn("Skip invalid segment record in {} : {}", index, line);
+          }
+        } catch (NumberFormatException e) {
+          log.warn("Skip invalid segment record in {} : {}", index, line);
+        }
+      });
+    }
+
+    locations.keySet().forEach(fileIdIndex::add);
+    log.info("Loaded {} files from {}", locations.size(), index);
+  }
+
+  /**
+   * Map existing segments, last one stays active. Appends resume after its last
+   * live file (bytes of files deleted, or not indexed before a crash, are
+   * overwritten).
+   */
+  private synchronized void openSegments() throws IOException {
+    var numbers = new ArrayList<Integer>();
+
+    try (var files = Files.newDirectoryStream(segmentFolder, SEGMENT_FILE_PREFIX + "*" + SEGMENT_FILE_SUFFIX)) {
+      files.forEach(f -> numbers.add(segmentNumber(f)));
+    }
+
+    numbers.sort(null);
+
+    for (int i = 0; i < numbers.size(); i++) {
+      var number = numbers.get(i);
+      var active = i == numbers.size() - 1;
+      var segment = Segment.open(segmentPath(number), number, active ? maxSegmentBytes : 0);
+
+      // sealed segments were truncated to their written size
+      segment.writePosition = active ? 0 : segment.channel.size();
+      segments.put(number, segment);
+
+      if (active) {
+        activeSegment = segment;
+      }
+    }
+
+    locations.values().forEach(l -> {
+      var segment = segments.get(l.segment());
+
+      if (segment != null) {
+        segment.liveBytes += l.metadata().getSize();
+        segment.writePosition = Math.max(segment.writePosition, l.offset() + l.metadata().getSize());
+      }
+    });
+
+    log.info("Opened {} segments in {}", segments.size(), segmentFolder);
+  }
+
+  @Override
+  public String save(InputStream content, String contentType) {
+    final var filename = UUID.randomUUID().toString();
+    Path tempFile = null;
+
+    try {
+      var head = content.readNBytes(INLINE_MAX_BYTES);
+      var next = head.length < INLINE_MAX_BYTES ? -1 : content.read();
+
+      if (next == -1) {
+        append(filename, ByteBuffer.wrap(head), null, head.length, contentType);
+      } else {
+        tempFile = Files.createTempFile(uploadFolder, TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+
+        try (var out = Files.newOutputStream(tempFile)) {
+          out.write(head);
+          out.write(next);
+          content.transferTo(out);
+        }
+
+        append(filename, null, tempFile, Files.size(tempFile), contentType);
+      }
+    } catch (IOException e) {
+      log.error("Error saving {} : {}", filename, e.getMessage());
+
+      throw new FileStorageException("Cannot save " + filename, e);
+    } finally {
+      deleteQuietly(tempFile);
+    }
+
+    return filename;
+  }
+
+  /**
+   * Append content (from buffer, or from file) to the active segment, and
+   * record its location.
+   */
+  private synchronized void append(String filename, ByteBuffer content, Path file, long size, String contentType)
+      throws IOException {
+    var segment = segmentFor(size);
+    var offset = segment.writePosition;
+
+    if (content != null) {
+      while (content.hasRemaining()) {
+        segment.channel.write(content, offset + content.position());
+      }
+    } else {
+      try (var source = FileChannel.open(file, StandardOpenOption.READ)) {
+        for (var written = 0L; written < size;) {
+          written += segment.channel.transferFrom(source, offset + written, size - written);
+        }
+      }
+    }
+
+    var metadata = FileMetadata.builder().contentType(contentType).size(size).createdAt(System.currentTimeMillis())
+        .build();
+    var location = new BlobLocation(segment.number, (int) offset, metadata);
+
+    appendIndex(record(filename, location));
+    segment.writePosition += size;
+    segment.liveBytes += size;
+    locations.put(filename, location);
+    fileIdIndex.add(filename);
+  }
+
+  /**
+   * Active segment if file fits, a new one otherwise (sized to the file if
+   * larger than a segment).
+   */
+  private Segment segmentFor(long size) throws IOException {
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("File of " + size + " bytes is larger than a segment can be");
+    }
+
+    if (activeSegment != null && activeSegment.writePosition + size <= activeSegment.mapped.capacity()) {
+      return activeSegment;
+    }
+
+    if (activeSegment != null) {
+      activeSegment.seal();
+    }
+
+    var number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+    activeSegment = Segment.open(segmentPath(number), number, Math.max(size, maxSegmentBytes));
+    segments.put(number, activeSegment);
+
+    return activeSegment;
+  }
+
+  @Override
+  public synchronized boolean delete(String filename) {
+    var location = locations.get(filename);
+
+    if (location == null) {
+      return false;
+    }
+
+    try {
+      appendIndex(RECORD_DELETED, filename);
+    } catch (IOException e) {
+      throw new FileStorageException("Cannot delete " + filename, e);
+    }
+
+    locations.remove(filename);
+    fileIdIndex.remove(filename);
+
+    var segment = segments.get(location.segment());
+
+    if (segment != null) {
+      segment.liveBytes -= location.metadata().getSize();
+    }
+
+    return true;
+  }
+
+  @Override
+  public JsonBasePage<String> list(String after, int limit) {
+    return fileIdIndex.page(after, limit);
+  }
+
+  @Override
+  public Resource load(String filename) {
+    // a file moved by compaction is looked up again
+    for (int attempt = 0; attempt < 2; attempt++) {
+      var location = locations.get(filename);
+
+      if (location == null) {
+        return null;
+      }
+
+      var segment = segments.get(location.segment());
+
+      if (segment != null) {
+        return new ByteBufferResource(filename,
+            segment.mapped.slice(location.offset(), (int) location.metadata().getSize()));
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public FileMetadata metadata(String filename) {
+    var location = locations.get(filename);
+
+    return location != null ? location.metadata() : null;
+  }
+
+  /**
+   * Stop compactor. A running compaction is not interrupted (an interrupt would
+   * close segment channels), it is waited for a few seconds.
+   */
+  @Override
+  public void close() {
+    compactor.shutdown();
+
+    try {
+      if (!compactor.awaitTermination(COMPACTOR_STOP_SECONDS, TimeUnit.SECONDS)) {
+        log.warn("Segment compaction of {} still running at shutdown", segmentFolder);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Move live files of mostly dead, sealed segments into the active segment,
+   * then delete those segments. Readers still holding a slice of a deleted
+   * segment keep reading it (mapping outlives the file).
+   */
+  void compact() {
+    try {
+      var candidates = new ArrayList<Segment>();
+
+      synchronized (this) {
+        segments.values().stream().filter(s -> s != activeSegment && s.writePosition > 0
+            && s.deadBytes() >= compactDeadRatio * s.writePosition).forEach(candidates::add);
+      }
+
+      for (var segment : candidates) {
+        compact(segment);
+      }
+
+      if (!candidates.isEmpty()) {
+        rewriteIndex();
+      }
+    } catch (IOException | RuntimeException e) {
+      log.error("Segment compaction of {} failed : {}", segmentFolder, e.getMessage());
+    }
+  }
+
+  private void compact(Segment segment) throws IOException {
+    var moved = 0;
+
+    for (var entry : locations.entrySet()) {
+      if (entry.getValue().segment() == segment.number) {
+        synchronized (this) {
+          var location = locations.get(entry.getKey());
+
+          // deleted meanwhile
+          if (location == null || location.segment() != segment.number) {
+            continue;
+          }
+
+          var size = (int) location.metadata().getSize();
+          var target = segmentFor(size);
+          var offset = target.writePosition;
+          var content = segment.mapped.slice(location.offset(), size);
+
+          while (content.hasRemaining()) {
+            target.channel.write(content, offset + content.position());
+          }
+
+          var relocated = new BlobLocation(target.number, (int) offset, location.metadata());
+
+          appendIndex(record(entry.getKey(), relocated));
+          target.writePosition += size;
+          target.liveBytes += size;
+          locations.put(entry.getKey(), relocated);
+          moved++;
+        }
+      }
+    }
+
+    synchronized (this) {
+      segments.remove(segment.number);
+      segment.close();
+      Files.deleteIfExists(segment.path);
+    }
+
+    log.info("Compacted segment {} of {}, {} live files moved, {} bytes reclaimed", segment.number,
+        segmentFolder, moved, segment.writePosition - segment.liveBytes);
+  }
+
+  /**
+   * Replace index by one record per live file, dropping records of deleted and
+   * moved files.
+   */
+  private synchronized void rewriteIndex() throws IOException {
+    var index = uploadFolder.resolve(INDEX_FILE);
+    var tempIndex = Files.createTempFile(uploadFolder, TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+
+    try (var writer = Files.newBufferedWriter(tempIndex, StandardCharsets.UTF_8)) {
+      for (var entry : locations.entrySet()) {
+        writer.write(String.join(INDEX_SEPARATOR, record(entry.getKey(), entry.getValue())));
+        writer.newLine();
+      }
+    }
+
+    Files.move(tempIndex, index, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static String[] record(String filename, BlobLocation location) {
+    return new String[] { RECORD_SAVED, filename, Integer.toString(location.segment()),
+        Integer.toString(location.offset()), Long.toString(location.metadata().getSize()),
+        Long.toString(location.metadata().getCreatedAt()), location.metadata().getContentType() };
+  }
+
+  private void appendIndex(String... fields) throws IOException {
+    Files.writeString(uploadFolder.resolve(INDEX_FILE), String.join(INDEX_SEPARATOR, fields) + "\n",
+        StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
+  private long deadBytes() {
+    return segments.values().stream().mapToLong(Segment::deadBytes).sum();
+  }
+
+  private Path segmentPath(int number) {
+    return segmentFolder.resolve(String.format("%s%06d%s", SEGMENT_FILE_PREFIX, number, SEGMENT_FILE_SUFFIX));
+  }
+
+  private static int segmentNumber(Path segment) {
+    var name = segment.getFileName().toString();
+
+    return Integer.parseInt(name.substring(SEGMENT_FILE_PREFIX.length(), name.length() - SEGMENT_FILE_SUFFIX.length()));
+  }
+
+  private void deleteQuietly(Path file) {
+    if (file == null) {
+      return;
+    }
+
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      log.warn("Cannot delete temporary file {} : {}", file, e.getMessage());
+    }
+  }
+
+  /**
+   * One segment file, mapped once. Counters are guarded by the storage.
+   */
+  private static class Segment {
+
+    private final int number;
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer mapped;
+
+    private long writePosition;
+
+    private long liveBytes;
+
+    private Segment(int number, Path path, FileChannel channel, MappedByteBuffer mapped) {
+      this.number = number;
+      this.path = path;
+      this.channel = channel;
+      this.mapped = mapped;
+    }
+
+    /**
+     * Open (or create) segment, mapped at <code>capacity</code> bytes or its
+     * current size if larger (file grows sparse up to capacity).
+     */
+    private static Segment open(Path path, int number, long capacity) throws IOException {
+      var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+
+      try {
+        var mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, channel.size()));
+
+        return new Segment(number, path, channel, mapped);
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    /**
+     * No more appends, give unused (sparse) tail back. Mapping stays valid for
+     * the written part.
+     */
+    private void seal() throws IOException {
+      channel.truncate(writePosition);
+    }
+
+    private long deadBytes() {
+      return writePosition - liveBytes;
+    }
+
+    private void close() throws IOException {
+      channel.close();
+    }
+
+  }
+
+}